@@ -1,9 +1,12 @@
 package tablut;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-
-import static tablut.Square.sq;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A Player that automatically generates moves.
@@ -27,12 +30,68 @@ class AI extends Player {
      */
     private static final int INFTY = Integer.MAX_VALUE;
     /**
-     * the direction.
+     * The search checks the clock every TIME_CHECK_INTERVAL + 1 nodes.
+     */
+    private static final int TIME_CHECK_INTERVAL = (1 << 10) - 1;
+    /**
+     * The least depth searched with an aspiration window.
+     */
+    private static final int ASPIRATION_DEPTH = 3;
+    /**
+     * The half-width of the first aspiration window.
+     */
+    private static final int ASPIRATION_WINDOW = 50;
+    /**
+     * Positions searched at least this deep by the young-brothers-wait
+     * search are split among threads; shallower ones are searched
+     * serially.
+     */
+    private static final int SPLIT_DEPTH = 3;
+    /**
+     * The least depth at which null-move pruning is tried, and the number
+     * of levels by which the search after a pass is reduced.
+     */
+    private static final int NULL_MOVE_DEPTH = 3, NULL_MOVE_REDUCTION = 2;
+    /**
+     * A side must have at least this many pieces, not counting the king,
+     * to pass in null-move pruning.  With fewer, being forced to move may
+     * well be a disadvantage (zugzwang), and a pass proves nothing.
+     */
+    private static final int NULL_MOVE_MIN_PIECES = 4;
+    /**
+     * Late move reductions apply at this depth and above, to quiet moves
+     * tried after the first LMR_MOVES; after 2 * LMR_MOVES, they are
+     * reduced by two levels rather than one.
+     */
+    private static final int LMR_DEPTH = 3, LMR_MOVES = 4;
+    /**
+     * The greatest number of extensions (see extension) along any path of
+     * the search.
+     */
+    private static final int EXTENSION_BUDGET = 4;
+    /**
+     * Extensions are made only at this depth and below, where a threat is
+     * most likely to be cut off at the horizon.
+     */
+    private static final int EXTENSION_DEPTH = 2;
+    /**
+     * Futility pruning applies at this depth and below.
+     */
+    private static final int FUTILITY_DEPTH = 2;
+    /**
+     * The most by which a quiet move is assumed to raise the static value
+     * for each level of depth left, for futility pruning.
      */
-    private Direct[] directs = {new Direct(1, 0),
-        new Direct(-1, 0),
-        new Direct(0, 1),
-        new Direct(0, -1)};
+    private static final int FUTILITY_MARGIN = 250;
+    /**
+     * The killers used at the root, which has none, so that the root's
+     * moves are ordered the same way throughout a search (see search).
+     */
+    private static final int[] NO_KILLERS = { 0, 0 };
+    /**
+     * History scores are halved when one of them reaches this.
+     */
+    private static final int HISTORY_LIMIT = 1 << 28;
 
     /**
      * A new AI with no piece or controller (intended to produce
@@ -72,10 +131,41 @@ class AI extends Player {
      * Return a move for me from the current position, assuming there
      * is a move.
      */
-    private Move findMove() {
-        Board b = new Board(board());
-        _lastFoundMove = null;
-        int score = findMove(board(), maxDepth(b), true, 0, 0, 0);
+    Move findMove() {
+        long start = System.nanoTime();
+        _table = _controller.table();
+        _table.newSearch();
+        long budget = _controller.moveTime() * 1_000_000L;
+        long deadline = budget == 0 ? Long.MAX_VALUE : start + budget;
+        long softDeadline = budget == 0 ? Long.MAX_VALUE : start + budget / 2;
+        int maxDepth = maxDepth(board());
+
+        AI best;
+        if (_controller.youngBrothersWait()) {
+            splitDeepen(new Board(board()), maxDepth, deadline, softDeadline);
+            best = this;
+        } else {
+            best = smpDeepen(maxDepth, deadline, softDeadline);
+        }
+        _lastFoundMove = best._lastFoundMove;
+        _depth = best._depth;
+        _score = best._score;
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        _controller.logComment("%s: depth %d, score %d, %d nodes in %d ms"
+                               + " on %d threads,"
+                               + " %d cutoffs (%d%% on the first move),"
+                               + " %d re-searches, %d/%d aspiration fails"
+                               + " low/high, %d null-move cutoffs,"
+                               + " %d reductions, %d futile moves,"
+                               + " %d extensions",
+                               _myPiece, best._depth, best._score,
+                               _totalNodes, millis, _controller.threads(),
+                               _cutoffs, _cutoffs == 0 ? 0
+                               : 100 * _firstMoveCutoffs / _cutoffs,
+                               _researches, _failLows, _failHighs,
+                               _nullCutoffs, _reductions, _futileMoves,
+                               _extended);
 
         if (_lastFoundMove == null) {
             List<Move> mvs = _controller.board().legalMoves(_myPiece);
@@ -89,599 +179,1287 @@ class AI extends Player {
         return _lastFoundMove;
     }
 
+    /**
+     * Search the current position by iterative deepening up to MAXDEPTH,
+     * as for deepen, with the controller's number of threads sharing
+     * _table (Lazy SMP).  Stop at DEADLINE, or after an iteration that
+     * ends after SOFTDEADLINE.  Return the AI whose iteration went
+     * deepest: I or one of my helpers.
+     */
+    private AI smpDeepen(int maxDepth, long deadline, long softDeadline) {
+        Thread[] threads = startHelpers(deadline, maxDepth);
+        deepen(new Board(board()), 1, maxDepth, deadline, softDeadline);
+        AI best = this;
+        long nodes = _nodes;
+        for (int i = 0; i < threads.length; i += 1) {
+            AI helper = _helpers[i];
+            helper._abort = true;
+            try {
+                threads[i].join();
+            } catch (InterruptedException excp) {
+                throw new Error("unexpected interrupt");
+            }
+            nodes += helper._nodes;
+            if (helper._depth > best._depth
+                && helper._lastFoundMove != null) {
+                best = helper;
+            }
+        }
+        _totalNodes = nodes;
+        return best;
+    }
+
+    /**
+     * Start the helper threads of a Lazy SMP search of the current
+     * position, one fewer than the controller's thread count, each
+     * deepening on its own copy of the board until DEADLINE, MAXDEPTH, or
+     * until told to stop, sharing _table with me.  Every other helper
+     * starts a level deeper, so that the threads spread over
+     * different depths and fill the table for each other.  Return the
+     * threads, which run _helpers[0 ..].
+     */
+    private Thread[] startHelpers(long deadline, int maxDepth) {
+        int n = _controller.threads() - 1;
+        if (_helpers.length != n) {
+            _helpers = new AI[n];
+            for (int i = 0; i < n; i += 1) {
+                _helpers[i] = new AI(_myPiece, _controller);
+            }
+        }
+        Thread[] threads = new Thread[n];
+        for (int i = 0; i < n; i += 1) {
+            AI helper = _helpers[i];
+            Board board = new Board(board());
+            int first = Math.min(1 + (i + 1) % 2, maxDepth);
+            helper._table = _table;
+            helper._abort = false;
+            threads[i] = new Thread(() -> helper.deepen(board, first, maxDepth,
+                                                        deadline,
+                                                        Long.MAX_VALUE));
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        return threads;
+    }
+
+    /**
+     * Search BOARD, a copy of the current position, by iterative
+     * deepening from FIRSTDEPTH up to MAXDEPTH, stopping at DEADLINE, on a
+     * win or loss, or after any iteration that ends after SOFTDEADLINE
+     * (when the next would probably not finish).  Afterwards, _depth and
+     * _score are the depth and value of the last iteration that finished,
+     * and _lastFoundMove is the best move found.
+     */
+    private void deepen(Board board, int firstDepth, int maxDepth,
+                        long deadline, long softDeadline) {
+        _lastFoundMove = null;
+        prepareSearch(board);
+        _stopped = false;
+        _deadline = deadline;
+        _depth = _score = 0;
+        int sense = board.turn() == Piece.WHITE ? 1 : -1;
+        int previousScore = 0;
+        for (int d = firstDepth; d <= maxDepth; d += 1) {
+            int value = aspirationSearch(board, d, sense, previousScore);
+            if (_stopped) {
+                break;
+            }
+            _depth = d;
+            previousScore = _score;
+            _score = value;
+            if (Math.abs(value) >= WILL_WIN_VALUE
+                || System.nanoTime() > softDeadline) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Search BOARD, a copy of the current position, by iterative
+     * deepening up to MAXDEPTH, as for deepen, stopping at DEADLINE or
+     * SOFTDEADLINE, but with each iteration a young-brothers-wait search
+     * (see Brother) on the controller's number of threads.  This finds
+     * what search would, except that it does not use _table, and that
+     * away from the root it orders moves by rules that depend on nothing
+     * found during the search, so that its move and value do not depend
+     * on the number of threads.  With null-move pruning, late move
+     * reductions, and futility pruning off (their decisions depend on the
+     * window), the move and value are those of the serial search too.
+     */
+    private void splitDeepen(Board board, int maxDepth, long deadline,
+                             long softDeadline) {
+        int threads = _controller.threads();
+        if (_pool == null || _pool.getParallelism() != threads) {
+            if (_pool != null) {
+                _pool.shutdown();
+            }
+            _pool = new ForkJoinPool(threads);
+            _workers.clear();
+        }
+        _splitNodes.reset();
+        _lastRoot = null;
+        _splitting = true;
+        deepen(board, 1, maxDepth, deadline, softDeadline);
+        _splitting = false;
+        _lastRoot = null;
+        _nodes = _totalNodes = _splitNodes.sum();
+    }
+
+    /**
+     * Return the number of positions visited by the last search, over all
+     * threads.
+     */
+    long nodes() {
+        return _totalNodes;
+    }
+
+    /**
+     * Return the value, from white's point of view, of the deepest
+     * iteration of the last search that finished.
+     */
+    int score() {
+        return _score;
+    }
+
+    /**
+     * Return the depth of the deepest iteration of the last search that
+     * finished.
+     */
+    int depth() {
+        return _depth;
+    }
+
     /**
      * The move found by the last call to one of the ...FindMove methods
      * below.
      */
     private Move _lastFoundMove;
+    /**
+     * The transposition table used by the current search.
+     */
+    private TranspositionTable _table;
+    /**
+     * The number of positions visited by the current search.
+     */
+    private long _nodes;
+    /**
+     * The number of positions visited by the last search, over all
+     * threads.
+     */
+    private long _totalNodes;
+    /**
+     * The depth and value of the last iteration of the current search that
+     * finished.
+     */
+    private int _depth, _score;
+    /**
+     * The value of System.nanoTime at which the current search must stop.
+     */
+    private long _deadline;
+    /**
+     * True once the current search has run out of time or been told to
+     * stop.
+     */
+    private boolean _stopped;
+    /**
+     * Set by another thread to tell a helper's search to stop.
+     */
+    private volatile boolean _abort;
+    /**
+     * The helpers of a Lazy SMP search (see startHelpers), each used
+     * by one thread.
+     */
+    private AI[] _helpers = new AI[0];
+    /**
+     * The threads of the young-brothers-wait search, or null until it is
+     * first used.
+     */
+    private ForkJoinPool _pool;
+    /**
+     * True while the current search is a young-brothers-wait search.
+     */
+    private boolean _splitting;
+    /**
+     * The number of positions visited by the current young-brothers-wait
+     * search.
+     */
+    private final LongAdder _splitNodes = new LongAdder();
+    /**
+     * The worker of each thread of the young-brothers-wait search, which
+     * searches the thread's positions serially (see joinSplit).  These
+     * are kept here rather than by the threads, which outlive me.
+     */
+    private final Map<Thread, AI> _workers = new ConcurrentHashMap<>();
+    /**
+     * The root of the last young-brothers-wait search of the current
+     * search that finished, or null.
+     */
+    private Brother _lastRoot;
+    /**
+     * While I am a worker, the position of the young-brothers-wait search
+     * that I am searching; otherwise null.
+     */
+    private Brother _task;
+    /**
+     * The number of beta cutoffs in the current search, and how many of
+     * them the first move tried caused.  The second is close to the first
+     * when moves are well ordered.
+     */
+    private long _cutoffs, _firstMoveCutoffs;
+    /**
+     * The number of moves in the current search that had to be searched
+     * again with a full window after beating a null window.
+     */
+    private long _researches;
+    /**
+     * The number of times in the current search that the value fell
+     * below, and above, the aspiration window.
+     */
+    private int _failLows, _failHighs;
+    /**
+     * The number of null-move cutoffs, of moves searched to a reduced
+     * depth, and of moves skipped by futility pruning in the current
+     * search.
+     */
+    private long _nullCutoffs, _reductions, _futileMoves;
+    /**
+     * The number of extensions made in the current search.
+     */
+    private long _extended;
+    /**
+     * The number of extensions along the path to the current position.
+     */
+    private int _extensions;
+    /**
+     * True iff the current search uses null-move pruning, late move
+     * reductions, futility pruning, and threat extensions, respectively
+     * (see Controller).
+     */
+    private boolean _nullMovePruning, _lateMoveReductions, _futilityPruning,
+        _threatExtensions;
+    /**
+     * _passed[p] is true while the move at ply p of the current search is
+     * a pass (see Board.makeNullMove), so that the reply is not one too.
+     */
+    private boolean[] _passed = new boolean[0];
+    /**
+     * _moveBuffers[p] holds the move codes of the position at ply p of the
+     * quiescence search, and _pickers[p] supplies those of the position at
+     * ply p of the main search.
+     */
+    private int[][] _moveBuffers = new int[0][];
+    /**
+     * See _moveBuffers.
+     */
+    private MovePicker[] _pickers = new MovePicker[0];
+    /**
+     * _killers[p] holds the codes of the last two quiet moves that caused
+     * a beta cutoff at ply p, most recent first.
+     */
+    private int[][] _killers = new int[0][];
+    /**
+     * _history[f][t] grows with the depth of the searches in which the
+     * quiet move from the square with index f to that with index t caused
+     * a beta cutoff.  It is kept from one search to the next, halved.
+     */
+    private int[][] _history;
+    /**
+     * A copy of _history as it was when the current search began, which
+     * orders the root's moves.
+     */
+    private int[][] _rootHistory;
+    /**
+     * True iff _history belongs to another AI (see joinSplit), and so
+     * must not be changed.
+     */
+    private boolean _sharedHistory;
+
+    /**
+     * Search BOARD, with SENSE as for findMove, to DEPTH, and return its
+     * value from white's point of view, recording the best move in
+     * _lastFoundMove.  Unless DEPTH is small or GUESS is a win or loss,
+     * the search first looks only for values near GUESS, widening the
+     * window from the bound that the value fell outside each time.  (The
+     * value itself is only a bound, which depends on the order in which
+     * the moves were searched.)  GUESS should be the
+     * value found two depths earlier: the leaves of searches whose depths
+     * differ by one belong to different sides, and their values swing.
+     */
+    private int aspirationSearch(Board board, int depth, int sense,
+                                 int guess) {
+        if (depth < ASPIRATION_DEPTH || Math.abs(guess) >= WILL_WIN_VALUE) {
+            return findMove(board, depth, true, sense, -INFTY, INFTY);
+        }
+        long delta = ASPIRATION_WINDOW;
+        long alpha = guess - delta, beta = guess + delta;
+        while (true) {
+            Move previous = _lastFoundMove;
+            int a = (int) Math.max(alpha, -INFTY),
+                b = (int) Math.min(beta, INFTY);
+            int value = findMove(board, depth, true, sense, a, b);
+            if (_stopped) {
+                return value;
+            }
+            if (value <= a && a > -INFTY) {
+                _lastFoundMove = previous;
+                _failLows += 1;
+                alpha = a - delta;
+            } else if (value >= b && b < INFTY) {
+                _failHighs += 1;
+                beta = b + delta;
+            } else {
+                return value;
+            }
+            delta *= 4;
+        }
+    }
 
     /**
      * Find a move from position BOARD and return its value, recording
      * the move found in _lastFoundMove iff SAVEMOVE. The move
      * should have maximal value or have value > BETA if SENSE==1,
      * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _lastMoveFound.
+     * DEPTH levels.  Searching at level 0 returns the value of the
+     * quiescence search (see quiesce) and does not set _lastMoveFound.
+     * Values are from white's point of view, and SENSE must be 1 iff white
+     * is to move.  BOARD is restored before returning.
      */
     private int findMove(Board board, int depth, boolean saveMove,
                          int sense, int alpha, int beta) {
-
-
-        if (_myPiece == Piece.WHITE) {
-            return buildWhitePath(board, depth, saveMove, sense, alpha, beta);
+        if (sense == 1) {
+            return rootSearch(board, depth, saveMove, alpha, beta);
         } else {
-            return buildBlackPath(board, depth, saveMove, sense, alpha, beta);
+            return -rootSearch(board, depth, saveMove, -beta, -alpha);
         }
-
-
     }
 
     /**
-     * build black piece.
-     *
-     * @param board    the board of the game
-     * @param depth    the depth
-     * @param saveMove the move
-     * @param sense    the sense
-     * @param alpha    the alpha
-     * @param beta     the beta
-     * @return 0
+     * Return the value of BOARD, the root, as for search, searched to
+     * DEPTH in the window ALPHA .. BETA, recording the best move in
+     * _lastFoundMove iff SAVEMOVE: by a young-brothers-wait search if
+     * that is in use, and otherwise by search.
      */
-    private int buildBlackPath(Board board, int depth, boolean saveMove,
-                               int sense, int alpha, int beta) {
-        Move mv = suroundMove(Piece.KING);
-        if (mv == null) {
-            mv = suroundMove(Piece.WHITE);
+    private int rootSearch(Board board, int depth, boolean saveMove,
+                           int alpha, int beta) {
+        if (!_splitting) {
+            return search(board, depth, 0, saveMove, alpha, beta);
         }
-        _lastFoundMove = mv;
-        return 0;
+        Brother root = new Brother(board, depth, alpha, beta, _lastRoot);
+        int value = _pool.invoke(root);
+        if (root._timeUp) {
+            _stopped = true;
+            return value;
+        }
+        _lastRoot = root;
+        if (saveMove && root._bestMove != 0) {
+            _lastFoundMove = Move.mv(root._bestMove);
+        }
+        return value;
     }
 
     /**
-     * build white piece's path.
-     *
-     * @param board    the board
-     * @param depth    the depth
-     * @param saveMove the saved move
-     * @param sense    the sense
-     * @param alpha    the alpha
-     * @param beta     the beta
-     * @return 0
+     * Return the negamax value of BOARD, from the point of view of the
+     * side to move, searched DEPTH more levels deep with alpha-beta
+     * pruning, PLY levels below the root.  The value is exact if it lies
+     * strictly between ALPHA and BETA; otherwise it is a bound on the
+     * same side of the window.  Records the best move found in
+     * _lastFoundMove iff SAVEMOVE.  A won position scores WINNING_VALUE
+     * less its ply, but never less than WILL_WIN_VALUE, so that quicker
+     * wins are preferred.  Consults and fills _table, if I have one.
+     * Makes and undoes
+     * moves on BOARD only.  Once the deadline passes, sets _stopped and
+     * returns a meaningless value at once; _lastFoundMove is then the
+     * best of the moves that were fully searched.  This is a principal
+     * variation search: only the first move is searched with the full
+     * window, and the others with a null window just above the best value
+     * so far, searching again with the full window the few that beat it.
+     * At DEPTH 0, the value is that of quiesce.  Away from the root and
+     * the principal variation, the search is also selective, as the
+     * controller allows: a position whose static value already reaches
+     * BETA is cut off if even passing keeps it there (null-move pruning);
+     * quiet moves ordered late are first searched less deep (late move
+     * reductions); and near the leaves, quiet moves are skipped when the
+     * static value is too far below ALPHA for them to matter (futility
+     * pruning).  Moves that make a threat against the king, or by it, are
+     * followed a level deeper (see extension).  The root's moves are
+     * ordered by the history as it was when the search began, and the
+     * previous iteration's best move first, so that their order does not
+     * change while the search runs.
      */
-    private int buildWhitePath(Board board, int depth,
-                               boolean saveMove, int sense,
-                               int alpha, int beta) {
-        Square kingSq = findKing(); List<Path> paths = new ArrayList<>();
-        Path basPath = new Path();
-        basPath.nowSq = kingSq; paths.add(basPath);
-        while (true) {
-            goPath(paths); boolean flag = true;
-            for (Path pa : paths) {
-                if (!pa.end) {
-                    flag = false;
+    private int search(Board board, int depth, int ply, boolean saveMove,
+                       int alpha, int beta) {
+        if (depth == 0) {
+            return quiesce(board, ply, alpha, beta);
+        }
+        if (countNode()) {
+            return 0;
+        }
+        Piece winner = board.winner();
+        if (winner != null) {
+            return winValue(winner, board, ply);
+        }
+        long key = board.key();
+        long entry = _table == null ? 0 : _table.probe(key);
+        if (entry != 0 && ply > 0
+            && TranspositionTable.depth(entry) >= depth) {
+            int value = fromTable(TranspositionTable.score(entry), ply);
+            switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.EXACT:
+                return value;
+            case TranspositionTable.LOWER:
+                if (value >= beta) {
+                    return value;
                 }
-            }
-            if (flag) {
                 break;
-            }
-        }
-        if (paths.isEmpty()) {
-            _lastFoundMove = suroundMove(Piece.BLACK); return 0;
-        }
-        List<Path> result = filterMinScorePath(paths);
-        int radam = _controller.randInt(result.size());
-        Path path = result.get(radam); Move mv = path.path.get(0);
-        if (_controller.board().get(mv.to().col(), mv.to().row()) == Piece.EMPTY
-                && _controller.board().isUnblockedMove(mv.from(), mv.to())) {
-            _lastFoundMove = mv;
-            return path.score;
-        }
-        if (mv.from().row() == mv.to().row()) {
-            int fromCol = Math.min(mv.from().col(), mv.to().col());
-            int toCol = Math.max(mv.from().col(), mv.to().col());
-            int mid = fromCol == mv.from().col() ? 1 : 0;
-            for (int col = fromCol + mid; col <= toCol - (1 - mid); col++) {
-                Piece piece = board().get(col, mv.from().row());
-                if (piece == Piece.WHITE) {
-                    Move mv1 = findEscape(col, mv.from().row());
-                    if (mv1 == null) {
-                        continue;
-                    }
-                    _lastFoundMove = mv1;
-                    return path.score;
+            default:
+                if (value <= alpha) {
+                    return value;
                 }
+                break;
             }
         }
-        if (mv.from().col() == mv.to().col()) {
-            int fromRow = Math.min(mv.from().row(), mv.to().row());
-            int toRow = Math.max(mv.from().row(), mv.to().row());
-            int mid = fromRow == mv.from().row() ? 1 : 0;
-            for (int row = fromRow + mid; row <= toRow - (1 - mid); row++) {
-                Piece piece = board().get(mv.from().col(), row);
-                if (piece == Piece.WHITE) {
-                    Move mv1 = findEscape(mv.from().col(), row);
-                    if (mv1 == null) {
-                        continue;
-                    }
-                    _lastFoundMove = mv1;
-                    return path.score;
-                }
+        MovePicker picker = picker(ply);
+        boolean pv = beta - alpha > 1;
+        int eval = selectiveEval(board, ply, pv);
+        if (nullMoveAllowed(board, depth, ply, pv, eval, beta)) {
+            int value = nullMoveSearch(board, depth, ply, beta);
+            if (_stopped) {
+                return 0;
+            } else if (value >= beta) {
+                _nullCutoffs += 1;
+                return value;
             }
         }
-        return 0;
-    }
+        boolean futile = futile(depth, ply, pv, eval, alpha);
 
-    /** find the minimized score path.
-     *
-     * @param paths the paths
-     * @return the list of paths
-     */
-    private List<Path> filterMinScorePath(List<Path> paths) {
-        List<Path> result = new ArrayList<>();
-        int minSco = Integer.MAX_VALUE;
-        for (Path pa : paths) {
-            if (minSco > pa.score) {
-                minSco = pa.score;
-                result.clear();
-                result.add(pa);
-            } else if (minSco == pa.score) {
-                result.add(pa);
+        if (ply == 0) {
+            picker.reset(board, NO_KILLERS, _rootHistory);
+            if (_lastFoundMove != null) {
+                picker.prefer(_lastFoundMove.code());
             }
+        } else {
+            picker.reset(board, _killers[ply], _history);
+            picker.prefer(entry == 0 ? 0 : TranspositionTable.move(entry));
         }
 
-        return result;
-
-    }
-
-    /**
-     * capture the piece.
-     *
-     * @param piece the piece that we should capture
-     * @return the move
-     */
-    private Move suroundMove(Piece piece) {
-
-        Move move = null;
-        if (piece == Piece.KING) {
-            move = computeKillKingMove();
-            if (move != null) {
-                return move;
+        int best = -INFTY, bestMove = 0, k = 0;
+        for (int move = picker.next(); move != 0;
+             move = picker.next(), k += 1) {
+            boolean quiet = picker.lastWasQuiet();
+            if (futile && k > 0 && quiet) {
+                _futileMoves += 1;
+                continue;
             }
-        }
-
-        List<Square> pieces = listAllPieces(piece);
-
-
-        while (true) {
-            List<Square> subPieces = getMaxScorePieces(pieces, piece);
-
-            move = findAvaliableMove(pieces, piece);
-            if (move != null) {
-                return move;
+            int a = Math.max(alpha, best);
+            board.makeMove(move);
+            int extension = extension(board, move, depth);
+            int reduction = reduction(quiet, k, depth, ply, extension);
+            int newDepth = depth - 1 + extension;
+            _extensions += extension;
+            int value;
+            if (k == 0) {
+                value = -search(board, newDepth, ply + 1, false, -beta, -a);
             } else {
-                pieces.removeAll(subPieces);
-                if (pieces.isEmpty()) {
+                value = -search(board, newDepth - reduction, ply + 1, false,
+                                -a - 1, -a);
+                if (reduction > 0 && value > a && !_stopped) {
+                    value = -search(board, newDepth, ply + 1, false,
+                                    -a - 1, -a);
+                }
+                if (value > a && value < beta && !_stopped) {
+                    _researches += 1;
+                    value = -search(board, newDepth, ply + 1, false,
+                                    -beta, -a);
+                }
+            }
+            _extensions -= extension;
+            board.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (value > best) {
+                best = value;
+                bestMove = move;
+                if (saveMove) {
+                    _lastFoundMove = Move.mv(move);
+                }
+                if (best >= beta) {
+                    recordCutoff(board, move, k, depth, ply);
                     break;
                 }
             }
         }
-
-        if (piece == Piece.KING) {
-            return null;
+        if (bestMove == 0) {
+            int score = board.evaluate();
+            return board.turn() == Piece.WHITE ? score : -score;
         }
 
-
-        Piece enemyPiece = piece == Piece.WHITE ? Piece.BLACK : Piece.WHITE;
-        List<Move> mvs = _controller.board().legalMoves(enemyPiece);
-        if (mvs == null || mvs.isEmpty()) {
-            System.out.println("Error no avaliable steps!");
-            return null;
+        int bound = best >= beta ? TranspositionTable.LOWER
+            : best > alpha ? TranspositionTable.EXACT
+            : TranspositionTable.UPPER;
+        if (_table != null) {
+            _table.store(key,
+                         bound == TranspositionTable.UPPER ? 0 : bestMove,
+                         toTable(best, ply), bound, depth);
         }
+        return best;
+    }
 
-        move = mvs.get(0);
+    /**
+     * Return the static value of BOARD, PLY levels below the root, from
+     * the point of view of the side to move, if the selective search
+     * there might need it (see nullMoveAllowed and futile), and otherwise
+     * 0.  PV is true iff the window there is wider than a null window.
+     */
+    private int selectiveEval(Board board, int ply, boolean pv) {
+        if (pv || ply == 0 || !_nullMovePruning && !_futilityPruning) {
+            return 0;
+        }
+        int eval = board.evaluate();
+        return board.turn() == Piece.BLACK ? -eval : eval;
+    }
 
-        return move;
+    /**
+     * Return true iff search should try null-move pruning (see
+     * nullMoveSearch) in BOARD, PLY levels below the root with DEPTH
+     * levels left, where PV is as for selectiveEval, EVAL is the value it
+     * gave, and BETA is the top of the window.
+     */
+    private boolean nullMoveAllowed(Board board, int depth, int ply,
+                                    boolean pv, int eval, int beta) {
+        return _nullMovePruning && !pv && ply > 0 && depth >= NULL_MOVE_DEPTH
+            && !_passed[ply - 1] && eval >= beta
+            && Math.abs(beta) < WILL_WIN_VALUE
+            && board.pieceCount(board.turn()) >= NULL_MOVE_MIN_PIECES;
     }
 
-    /** compute the move that can capture king.
-     *
-     * @return the move
+    /**
+     * Return true iff search should skip the quiet moves after the first
+     * (futility pruning) in a position PLY levels below the root with
+     * DEPTH levels left, where PV and EVAL are as for nullMoveAllowed and
+     * ALPHA is the bottom of the window.
      */
-    private Move computeKillKingMove() {
-        Move mv = null;
-        List<Square> pieces = listAllPieces(Piece.KING);
+    private boolean futile(int depth, int ply, boolean pv, int eval,
+                           int alpha) {
+        return _futilityPruning && !pv && ply > 0 && depth <= FUTILITY_DEPTH
+            && eval + FUTILITY_MARGIN * depth <= alpha
+            && Math.abs(alpha) < WILL_WIN_VALUE;
+    }
 
-        if (pieces == null || pieces.isEmpty() || pieces.size() > 1) {
-            return null;
+    /**
+     * Return the number of levels by which search should first reduce
+     * the search of the Kth move tried (counting from 0) in a position
+     * PLY levels below the root with DEPTH levels left (late move
+     * reductions), given that the move is QUIET or not and is extended
+     * by EXTENSION levels.
+     */
+    private int reduction(boolean quiet, int k, int depth, int ply,
+                          int extension) {
+        if (!_lateMoveReductions || ply == 0 || !quiet || k < LMR_MOVES
+            || depth < LMR_DEPTH || extension != 0) {
+            return 0;
         }
-        Square sq = pieces.get(0);
-
-        if (_controller.board().get(sq.col() - 1, sq.row()) == Piece.BLACK) {
-
-            mv = findBlackMove(sq.col() + 1, sq.row());
-            if (mv != null) {
-                return mv;
-            }
+        _reductions += 1;
+        return k >= 2 * LMR_MOVES ? 2 : 1;
+    }
 
+    /**
+     * Return the number of levels by which to extend the search of the
+     * position after MOVE, which has just been made on BOARD: 1 if the
+     * move opened a line from the king to the edge, by moving the king or
+     * by moving the piece that blocked the line (white threatens to
+     * escape), or put a black piece beside the king so that three of its
+     * sides are hostile (black threatens to surround it), and 0
+     * otherwise.  No path gets more than EXTENSION_BUDGET extensions in
+     * all, so that threats repeated along a line of play cannot make the
+     * search run away, and there are none unless threat extensions are on
+     * and DEPTH, the depth left before the move, is at most
+     * EXTENSION_DEPTH.
+     */
+    private int extension(Board board, int move, int depth) {
+        int king = board.kingIndex();
+        if (!_threatExtensions || depth > EXTENSION_DEPTH
+            || _extensions >= EXTENSION_BUDGET || king < 0
+            || board.winner() != null) {
+            return 0;
         }
-        if (_controller.board().get(sq.col() + 1, sq.row()) == Piece.BLACK) {
-            mv = findBlackMove(sq.col() - 1, sq.row());
-            if (mv != null) {
-                return mv;
+        int size = board.size(), from = Move.fromIndex(move),
+            to = Move.toIndex(move);
+        if (board.turn() == Piece.BLACK) {
+            int dir = to == king ? -1 : lineDirection(king, from, size);
+            if (to == king ? openLines(board, king) > 0
+                : dir >= 0 && board.nearestPiece(king, dir) < 0) {
+                _extended += 1;
+                return 1;
             }
-        }
-        if (_controller.board().get(sq.col(), sq.row() - 1) == Piece.BLACK) {
-            mv = findBlackMove(sq.col(), sq.row() + 1);
-            if (mv != null) {
-                return mv;
+        } else {
+            int[] around = board.geometry().neighbors()[king];
+            int hostile = 0;
+            boolean beside = false;
+            for (int sq : around) {
+                beside |= sq == to;
+                if (sq >= 0 && (board.get(sq) == Piece.BLACK
+                                || sq == board.geometry().throne()
+                                   && board.get(sq) == Piece.EMPTY)) {
+                    hostile += 1;
+                }
             }
-        }
-        if (_controller.board().get(sq.col(), sq.row() + 1) == Piece.BLACK) {
-            mv = findBlackMove(sq.col(), sq.row() - 1);
-            if (mv != null) {
-                return mv;
+            if (beside && hostile == 3) {
+                _extended += 1;
+                return 1;
             }
         }
-
-        return mv;
-
+        return 0;
     }
 
     /**
-     * find the move for black pieces.
-     * @param col the column
-     * @param row the row
-     * @return
+     * Return the direction (as for Square.rookMove) from the square with
+     * index FROM to the square with index TO on a board with SIZE squares
+     * on a side, or -1 if they are not in the same row or column.
      */
-    private Move findBlackMove(int col, int row) {
-        if (_controller.board().get(col, row) == Piece.BLACK) {
-            return null;
+    private static int lineDirection(int from, int to, int size) {
+        if (from == to) {
+            return -1;
+        } else if (from % size == to % size) {
+            return to > from ? 0 : 2;
+        } else if (from / size == to / size) {
+            return to > from ? 1 : 3;
         }
+        return -1;
+    }
 
-        for (Direct d : directs) {
-            int count = 1;
-
-            while (true) {
-                int bCol = col + count * d.col;
-                int bRow = row + count * d.row;
-
-                if (bCol < 0 || bCol > 8 || bRow < 0 || bCol > 8) {
-                    break;
-                }
-                if (_controller.board().get(bCol, bRow) == Piece.WHITE
-                        || _controller.board().get(bCol, bRow) == Piece.KING) {
-                    break;
-                }
-                if (_controller.board().get(bCol, bRow) == Piece.BLACK) {
-                    return Move.mv(sq(bCol, bRow), sq(col, row));
-                }
-                count++;
+    /**
+     * Return the number of directions in which the king, on the square
+     * with index KING of BOARD, can slide to the edge.
+     */
+    private static int openLines(Board board, int king) {
+        int lines = 0;
+        for (int dir = 0; dir < 4; dir += 1) {
+            if (board.nearestPiece(king, dir) < 0
+                && board.freeSteps(king, dir) > 0) {
+                lines += 1;
             }
         }
-        return null;
-
+        return lines;
     }
 
     /**
-     * find all the possible moves.
-     *
-     * @param pieces the pieces
-     * @param piece  the piece
-     * @return the move
+     * Return the value, from the point of view of the side to move, of
+     * passing in BOARD, PLY levels below the root, with DEPTH levels
+     * left: the position after the pass is searched NULL_MOVE_REDUCTION
+     * levels less deep than a move would be, with a null window at BETA.
+     * If even that reaches BETA, a real move almost surely would too
+     * (null-move pruning).  A win found this way is reported as BETA,
+     * since it may depend on the pass.  BOARD is restored before
+     * returning.
      */
-    private Move findAvaliableMove(List<Square> pieces, Piece piece) {
-
-        Piece friendPiece = piece == Piece.WHITE ? Piece.KING : Piece.BLACK;
-        Piece enemyPiece = piece == Piece.WHITE ? Piece.BLACK : Piece.WHITE;
+    private int nullMoveSearch(Board board, int depth, int ply, int beta) {
+        _passed[ply] = true;
+        board.makeNullMove();
+        int value = -search(board,
+                            Math.max(depth - 1 - NULL_MOVE_REDUCTION, 0),
+                            ply + 1, false, -beta, -beta + 1);
+        board.undo();
+        _passed[ply] = false;
+        return value >= WILL_WIN_VALUE ? beta : value;
+    }
 
-        if (piece == Piece.KING) {
-            friendPiece = Piece.WHITE;
-            enemyPiece = Piece.BLACK;
+    /**
+     * Return the value of BOARD, PLY levels below the root, from the point
+     * of view of the side to move, once the captures pending in it have
+     * been played out: the side to move may stand pat on the static score
+     * or make one of the moves of Board.captureMoves (captures and the
+     * king's escapes), and so on until neither side has one.  This keeps
+     * the search from misjudging a position in which a piece is about to
+     * be taken or the king is about to get away.  Bounds and the use of
+     * BOARD are as for search.
+     */
+    private int quiesce(Board board, int ply, int alpha, int beta) {
+        if (countNode()) {
+            return 0;
         }
-
-        int newCol = 0;
-        int newRow = 0;
-
-        for (Square s : pieces) {
-            for (Direct d : directs) {
-
-                for (int count = 1; true; count++) {
-                    newCol = s.col() + d.col * count;
-                    newRow = s.row() + d.row * count;
-                    if (newCol < 0 || newCol > 8 || newRow < 0 || newRow > 8
-                            || _controller.board().get(newCol, newRow) == piece
-                            || _controller.board().get(newCol, newRow)
-                            == friendPiece) {
-                        break;
-                    } else if (count == 1
-                            && _controller.board().get(newCol, newRow)
-                            == enemyPiece) {
-                        break;
-                    } else if (_controller.board().get(newCol, newRow)
-                            == enemyPiece) {
-                        if ((s.row() + d.row) == 4
-                                && (s.col() + d.col) == 4) {
-                            break;
-                        }
-                        return Move.mv(sq(newCol, newRow),
-                                sq(s.col() + d.col,
-                                        s.row() + d.row));
-                    }
+        Piece winner = board.winner();
+        if (winner != null) {
+            return winValue(winner, board, ply);
+        }
+        int best = board.evaluate();
+        if (board.turn() == Piece.BLACK) {
+            best = -best;
+        }
+        if (best >= beta) {
+            return best;
+        }
+        int[] moves = moveBuffer(ply);
+        int n = board.captureMoves(board.turn(), moves);
+        for (int k = 0; k < n; k += 1) {
+            board.makeMove(moves[k]);
+            int value = -quiesce(board, ply + 1, -beta, -Math.max(alpha, best));
+            board.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (value > best) {
+                best = value;
+                if (best >= beta) {
+                    break;
                 }
             }
         }
-
-        return null;
-
+        return best;
     }
 
     /**
-     * find the optimal move.
-     *
-     * @param pieces the pieces
-     * @param piece  the piece
-     * @return the result
+     * Count a position visited and return true iff the search must stop,
+     * setting _stopped once the deadline has passed, I have been told to
+     * stop, or, as a worker, my task is no longer needed.  The clock is
+     * read every TIME_CHECK_INTERVAL + 1 positions.
      */
-    private List<Square> getMaxScorePieces(List<Square> pieces, Piece piece) {
-        List<Square> result = new ArrayList<>();
-
-        int maxScore = Integer.MIN_VALUE;
-        Piece enemyPiece = piece == Piece.WHITE ? Piece.BLACK : Piece.WHITE;
-        Piece friendPiece = piece == Piece.WHITE ? Piece.KING : Piece.BLACK;
+    private boolean countNode() {
+        _nodes += 1;
+        if ((_nodes & TIME_CHECK_INTERVAL) == 0
+            && (System.nanoTime() > _deadline || _abort
+                || _task != null && _task.stopped())) {
+            _stopped = true;
+        }
+        return _stopped;
+    }
 
-        for (Square p : pieces) {
+    /**
+     * Return VALUE, the value of a position PLY levels below the root, in
+     * the form kept in the transposition table, where wins are counted
+     * from the position itself rather than from the root.
+     */
+    private static int toTable(int value, int ply) {
+        if (value >= WILL_WIN_VALUE) {
+            return Math.min(value + ply, WINNING_VALUE);
+        } else if (value <= -WILL_WIN_VALUE) {
+            return Math.max(value - ply, -WINNING_VALUE);
+        }
+        return value;
+    }
 
-            int newCol = 0;
-            int newRow = 0;
-            int pieceScore = 0;
-            for (Direct d : directs) {
-                newCol = p.col() + d.row;
-                newRow = p.row() + d.row;
-                if (newCol == 4 && newCol == 4) {
-                    pieceScore = Integer.MIN_VALUE;
-                }
+    /**
+     * Return the value of a position PLY levels below the root whose value
+     * in the transposition table is VALUE (the inverse of toTable).
+     */
+    private static int fromTable(int value, int ply) {
+        if (value >= WILL_WIN_VALUE) {
+            return Math.max(value - ply, WILL_WIN_VALUE);
+        } else if (value <= -WILL_WIN_VALUE) {
+            return Math.min(value + ply, -WILL_WIN_VALUE);
+        }
+        return value;
+    }
 
-                if (newCol < 0 || newCol > 8 || newRow < 0 || newRow > 8
-                        || _controller.board().get(newCol, newRow)
-                        == enemyPiece) {
-                    pieceScore++;
-                } else if (_controller.board().get(newCol, newRow) == piece
-                        || _controller.board().get(newCol, newRow)
-                        == friendPiece) {
-                    pieceScore--;
-                }
-            }
-            if (pieceScore > maxScore) {
-                result.clear();
-                maxScore = pieceScore;
-                result.add(p);
-            } else if (pieceScore == maxScore) {
-                result.add(p);
+    /**
+     * Return the buffer for the move codes at ply PLY, making sure that
+     * the other per-ply arrays reach that far.
+     */
+    private int[] moveBuffer(int ply) {
+        if (ply >= _moveBuffers.length) {
+            int plies = ply + 1, old = _moveBuffers.length;
+            _moveBuffers = Arrays.copyOf(_moveBuffers, plies);
+            _pickers = Arrays.copyOf(_pickers, plies);
+            _passed = Arrays.copyOf(_passed, plies);
+            _killers = Arrays.copyOf(_killers, plies);
+            for (int p = old; p < plies; p += 1) {
+                _moveBuffers[p] = new int[Board.MAX_MOVES];
+                _pickers[p] = new MovePicker();
+                _killers[p] = new int[2];
             }
         }
+        return _moveBuffers[ply];
+    }
 
-        return result;
+    /**
+     * Return the move picker for ply PLY, making sure that the other
+     * per-ply arrays reach that far.
+     */
+    private MovePicker picker(int ply) {
+        moveBuffer(ply);
+        return _pickers[ply];
     }
 
     /**
-     * list all the pieces.
-     *
-     * @param piece the piece
-     * @return the list of the pieces
+     * Set up the move-ordering tables and statistics for a search of
+     * BOARD: clear the killers, halve the history scores so that recent
+     * searches count most, and copy them to _rootHistory.
      */
-    private List<Square> listAllPieces(Piece piece) {
-        List<Square> result = new ArrayList<>();
-        for (int row = 0; row < Board.SIZE; row++) {
-            for (int col = 0; col < Board.SIZE; col++) {
-                if (_controller.board().get(col, row) == piece) {
-                    result.add(sq(col, row));
+    private void prepareSearch(Board board) {
+        int squares = board.size() * board.size();
+        if (_history == null || _history.length != squares) {
+            _history = new int[squares][squares];
+        } else {
+            for (int[] row : _history) {
+                for (int t = 0; t < squares; t += 1) {
+                    row[t] >>= 1;
                 }
             }
         }
-
-        return result;
-
+        if (_rootHistory == null || _rootHistory.length != squares) {
+            _rootHistory = new int[squares][squares];
+        }
+        for (int f = 0; f < squares; f += 1) {
+            System.arraycopy(_history[f], 0, _rootHistory[f], 0, squares);
+        }
+        for (int[] killers : _killers) {
+            killers[0] = killers[1] = 0;
+        }
+        _nodes = _cutoffs = _firstMoveCutoffs = _researches = 0;
+        _failLows = _failHighs = 0;
+        _nullCutoffs = _reductions = _futileMoves = _extended = 0;
+        _extensions = 0;
+        _nullMovePruning = _controller.nullMovePruning();
+        _lateMoveReductions = _controller.lateMoveReductions();
+        _futilityPruning = _controller.futilityPruning();
+        _threatExtensions = _controller.threatExtensions();
     }
 
     /**
-     * find the optimal escape move.
-     *
-     * @param col the column
-     * @param row the row
-     * @return the move
+     * Note that MOVE, the Kth move tried at ply PLY of BOARD, searched
+     * to DEPTH, caused a beta cutoff: count it, and if it is quiet (not a
+     * capture), make it a killer and, unless the history is shared, raise
+     * its history score.
      */
-    private Move findEscape(int col, int row) {
-
-        Direct direct = null;
-        int step = 0;
-        for (Direct d : directs) {
-            boolean flag = true;
-            for (int count = 1; flag; count++) {
-                int c = col + count * d.col;
-                int r = row + count * d.row;
-                if (c >= 0 && c < 9 && r >= 0 && r < 9
-                        && _controller.board().get(c, r) == Piece.EMPTY) {
-                    continue;
-                } else {
-                    if (count - 1 > step) {
-                        step = count - 1;
-                        direct = d;
-                    }
-                    flag = false;
-
+    private void recordCutoff(Board board, int move, int k, int depth,
+                              int ply) {
+        _cutoffs += 1;
+        if (k == 0) {
+            _firstMoveCutoffs += 1;
+        }
+        if (board.isCapture(move)) {
+            return;
+        }
+        int[] killers = _killers[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+        if (_sharedHistory) {
+            return;
+        }
+        int[] row = _history[Move.fromIndex(move)];
+        int to = Move.toIndex(move);
+        row[to] += depth * depth;
+        if (row[to] >= HISTORY_LIMIT) {
+            for (int[] r : _history) {
+                for (int t = 0; t < r.length; t += 1) {
+                    r[t] >>= 1;
                 }
             }
-
         }
+    }
 
-        if (step == 0) {
-            System.out.println("White on Road can not move!");
-            return null;
+    /**
+     * Prepare me, a thread's worker in MASTER's young-brothers-wait
+     * search, to search the position of TASK, or part of it, as MASTER
+     * would, but without a transposition table, and with MASTER's
+     * _rootHistory as my history, which I use but do not change.  My
+     * killers are cleared from TASK's ply on, so that what I find depends
+     * only on the position, and not on what this thread searched before.
+     */
+    private void joinSplit(AI master, Brother task) {
+        int ply = task._ply;
+        moveBuffer(ply);
+        for (int p = ply; p < _killers.length; p += 1) {
+            _killers[p][0] = _killers[p][1] = 0;
         }
-
-        int toCol = col + step * direct.col;
-        int toRoe = row + step * direct.row;
-
-        return Move.mv(sq(col, row), sq(toCol, toRoe));
-
+        if (ply > 0) {
+            _passed[ply - 1] = false;
+        }
+        _table = null;
+        _history = master._rootHistory;
+        _sharedHistory = true;
+        _deadline = master._deadline;
+        _nullMovePruning = master._nullMovePruning;
+        _lateMoveReductions = master._lateMoveReductions;
+        _futilityPruning = master._futilityPruning;
+        _threatExtensions = master._threatExtensions;
+        _extensions = task._extensions;
+        _task = task;
+        _stopped = false;
     }
 
     /**
-     * find of the possible move to the edge.
-     *
-     * @param paths the paths
+     * A position in a young-brothers-wait search, whose value is search's
+     * with the moves shared among threads.  The first move (the eldest
+     * brother) is searched first, on this thread; unless it refutes the
+     * position, the other moves (its younger brothers) are then forked
+     * together, each on its own copy of the board, and each searched as
+     * search searches a move after the first, with a null window at the
+     * value the eldest left.  If brothers refute the position, the first
+     * of them in move order gives its value and stops those after it;
+     * running out of time stops the root.  Positions other than the root
+     * less than SPLIT_DEPTH from the leaves, and the searches after a
+     * pass, are searched by the thread's worker (see joinSplit).  Moves
+     * are ordered without killers, by the history as it was when the
+     * search began, and with the best move first that the last search
+     * found for the same line of play (at the root, the previous
+     * iteration's), which the split positions of each finished search
+     * keep for the next.  Since nothing that orders the moves changes
+     * during the search, and no brother's window depends on one that
+     * might finish before it, the value and the best move found do not
+     * depend on how the threads are scheduled.
      */
-    private void goPath(List<Path> paths) {
+    private final class Brother extends RecursiveTask<Integer> {
 
-        List<Path> result = new ArrayList<>();
-        for (Path path : paths) {
-            if (path.end) {
-                result.add(path);
-            }
+        /** Brothers are never serialized; this quiets the warning. */
+        private static final long serialVersionUID = 1L;
+
+        /** No children. */
+        private static final Brother[] NO_BROTHERS = new Brother[0];
 
-            Square kingSq = path.nowSq;
+        /**
+         * The root of a search of BOARD, which becomes mine, DEPTH levels
+         * deep in the window ALPHA .. BETA, following the search whose
+         * root was PREVIOUS (or null).
+         */
+        Brother(Board board, int depth, int alpha, int beta,
+                Brother previous) {
+            this(null, 0, 0, board, depth, 0, alpha, beta, 0);
+            _previous = previous;
+        }
 
-            for (Direct sq : directs) {
-                int count = 1;
-                int baseScore = 0;
-                while (true) {
-                    int col = kingSq.col() + sq.col * count;
-                    int row = kingSq.row() + sq.row * count;
-                    if (row < 0 || row > 8 || col < 0 || col > 8
-                            || board().get(col, row) == Piece.BLACK) {
-                        break;
-                    } else if (board().get(col, row) == Piece.WHITE) {
-                        baseScore++;
-                    }
+        /**
+         * The position reached by MOVE, the INDEXth move (counting from
+         * 0) from the position of PARENT (null for the root), whose board
+         * is BOARD, which becomes mine, with EXTENSIONS extensions on the
+         * path to it.  DEPTH, REDUCTION, ALPHA, and BETA are as described
+         * for compute.
+         */
+        Brother(Brother parent, int index, int move, Board board, int depth,
+                int reduction, int alpha, int beta, int extensions) {
+            _parent = parent;
+            _root = parent == null ? this : parent._root;
+            _index = index;
+            _move = move;
+            _board = board;
+            _ply = parent == null ? 0 : parent._ply + 1;
+            _depth = depth;
+            _reduction = reduction;
+            _alpha = alpha;
+            _beta = beta;
+            _extensions = extensions;
+            _previous = parent == null || parent._previous == null ? null
+                : parent._previous.child(move);
+        }
+
+        /**
+         * Return the root's value, searched _depth levels in the window
+         * _alpha .. _beta.  For a younger brother, return instead its
+         * value from its parent's point of view, searched _depth levels
+         * less _reduction with a null window at _alpha, then again
+         * _depth levels if that beats _alpha and was reduced, and then
+         * again in the window _alpha .. _beta if it still does, noting
+         * at the parent if the value reaches _beta.
+         */
+        @Override
+        protected Integer compute() {
+            if (_parent == null) {
+                int value = negamax(_depth, _alpha, _beta);
+                release();
+                return value;
+            }
+            int a = _alpha;
+            int value = -negamax(_depth - _reduction, -a - 1, -a);
+            if (_reduction > 0 && value > a && !stopped()) {
+                value = -negamax(_depth, -a - 1, -a);
+            }
+            if (value > a && value < _beta && !stopped()) {
+                value = -negamax(_depth, -_beta, -a);
+            }
+            if (value >= _beta && !stopped()) {
+                _parent.refutedBy(_index);
+            }
+            release();
+            return value;
+        }
 
-                    Path basPath = clonePath(path);
-                    result.add(basPath);
+        /**
+         * Return my value, as search would give it, searched DEPTH more
+         * levels in the window ALPHA .. BETA.
+         */
+        private int negamax(int depth, int alpha, int beta) {
+            if (depth < SPLIT_DEPTH && _parent != null) {
+                AI worker = worker();
+                long nodes = worker._nodes;
+                int value = worker.search(_board, depth, _ply, false,
+                                          alpha, beta);
+                return collect(worker, nodes) ? 0 : value;
+            }
+            return split(depth, alpha, beta);
+        }
 
-                    basPath.addMove(Move.mv(kingSq, sq(col, row)));
-                    basPath.score = basPath.score + baseScore + 1;
+        /**
+         * Return my value as for negamax, searching my younger brothers
+         * in parallel.
+         */
+        private int split(int depth, int alpha, int beta) {
+            Board board = _board;
+            _split = true;
+            _children = NO_BROTHERS;
+            _splitNodes.increment();
+            if (System.nanoTime() > _deadline) {
+                _root._timeUp = true;
+            }
+            if (stopped()) {
+                return 0;
+            }
+            Piece winner = board.winner();
+            if (winner != null) {
+                return winValue(winner, board, _ply);
+            }
+            AI worker = worker();
+            boolean pv = beta - alpha > 1;
+            int eval = worker.selectiveEval(board, _ply, pv);
+            if (worker.nullMoveAllowed(board, depth, _ply, pv, eval, beta)) {
+                long nodes = worker._nodes;
+                int value = worker.nullMoveSearch(board, depth, _ply, beta);
+                if (collect(worker, nodes)) {
+                    return 0;
+                } else if (value >= beta) {
+                    return value;
+                }
+            }
+            boolean futile = worker.futile(depth, _ply, pv, eval, alpha);
+
+            MovePicker picker = worker.picker(_ply);
+            picker.reset(board, NO_KILLERS, _rootHistory);
+            if (_ply > 0) {
+                picker.prefer(_previous == null ? 0 : _previous._bestMove);
+            } else if (_lastFoundMove != null) {
+                picker.prefer(_lastFoundMove.code());
+            }
+            int[] moves = new int[Board.MAX_MOVES];
+            boolean[] quiet = new boolean[Board.MAX_MOVES];
+            int n = 0;
+            for (int move = picker.next(); move != 0; move = picker.next()) {
+                moves[n] = move;
+                quiet[n] = picker.lastWasQuiet();
+                n += 1;
+            }
+            if (n == 0) {
+                int score = board.evaluate();
+                return board.turn() == Piece.WHITE ? score : -score;
+            }
 
-                    basPath.nowSq = sq(col, row);
-                    if (basPath.score > 4) {
-                        result.remove(basPath);
-                    } else {
-                        if (col == 0 || col == 8 || row == 0 || row == 8) {
-                            basPath.end = true;
-                        }
-                    }
+            board.makeMove(moves[0]);
+            int extension = worker.extension(board, moves[0], depth);
+            Brother[] brothers = new Brother[n];
+            brothers[0] = new Brother(this, 0, moves[0], board,
+                                      depth - 1 + extension, 0,
+                                      -beta, -alpha, _extensions + extension);
+            int best = -brothers[0].negamax(brothers[0]._depth, -beta, -alpha);
+            brothers[0].release();
+            board.undo();
+            if (stopped()) {
+                return 0;
+            }
+            _bestMove = moves[0];
+            if (best >= beta) {
+                adopt(brothers, 1);
+                return best;
+            }
 
-                    count++;
+            int a = Math.max(alpha, best);
+            worker = worker();
+            _refuter = Integer.MAX_VALUE;
+            Brother[] younger = new Brother[n - 1];
+            int count = 0;
+            for (int k = 1; k < n; k += 1) {
+                if (futile && quiet[k]) {
+                    continue;
+                }
+                Board copy = new Board(board);
+                copy.makeMove(moves[k]);
+                extension = worker.extension(copy, moves[k], depth);
+                younger[count] =
+                    new Brother(this, k, moves[k], copy,
+                                depth - 1 + extension,
+                                worker.reduction(quiet[k], k, depth, _ply,
+                                                 extension),
+                                a, beta, _extensions + extension);
+                count += 1;
+            }
+            younger = Arrays.copyOf(younger, count);
+            invokeAll(younger);
+            if (stopped()) {
+                return 0;
+            }
+            int searched = 0;
+            while (searched < count && best < beta) {
+                Brother brother = younger[searched];
+                brothers[searched + 1] = brother;
+                searched += 1;
+                int value = brother.join();
+                if (value > best) {
+                    best = value;
+                    _bestMove = brother._move;
+                }
+            }
+            adopt(brothers, searched + 1);
+            return best;
+        }
 
+        /**
+         * Keep, as my children for the next search, those of
+         * BROTHERS[0 .. N-1] that split.
+         */
+        private void adopt(Brother[] brothers, int n) {
+            Brother[] children = new Brother[n];
+            int count = 0;
+            for (int k = 0; k < n; k += 1) {
+                if (brothers[k]._split) {
+                    children[count] = brothers[k];
+                    count += 1;
                 }
             }
+            _children = Arrays.copyOf(children, count);
         }
 
-        paths.clear();
-        paths.addAll(result);
-    }
+        /**
+         * Return my child reached by MOVE in the search in which I split,
+         * or null if there is none.
+         */
+        private Brother child(int move) {
+            for (Brother child : _children) {
+                if (child._move == move) {
+                    return child;
+                }
+            }
+            return null;
+        }
 
-    /**
-     * copy the path.
-     *
-     * @param path the path
-     * @return the path copied
-     */
-    private Path clonePath(Path path) {
-        Path result = new Path();
+        /**
+         * Let go of what I no longer need once I am searched: my board,
+         * and the search before mine.
+         */
+        private void release() {
+            _board = null;
+            _previous = null;
+        }
 
-        result.nowSq = path.nowSq;
-        result.score = path.score;
-        result.end = path.end;
-        for (Move mv : path.path) {
-            result.addMove(mv);
+        /**
+         * Return this thread's worker, prepared to search my position.
+         */
+        private AI worker() {
+            AI worker =
+                _workers.computeIfAbsent(Thread.currentThread(),
+                                         t -> new AI(_myPiece, _controller));
+            worker.joinSplit(AI.this, this);
+            return worker;
         }
 
-        return result;
-    }
+        /**
+         * Count the positions that WORKER has visited since it had visited
+         * NODES, and return true iff it had to stop, noting at the root if
+         * that was because time is up.
+         */
+        private boolean collect(AI worker, long nodes) {
+            _splitNodes.add(worker._nodes - nodes);
+            if (worker._stopped && !stopped()) {
+                _root._timeUp = true;
+            }
+            return worker._stopped;
+        }
 
-    /**
-     * find the king.
-     *
-     * @return the square where the king is
-     */
-    private Square findKing() {
+        /**
+         * Note that my younger brother with index INDEX refuted me.
+         */
+        private synchronized void refutedBy(int index) {
+            if (index < _refuter) {
+                _refuter = index;
+            }
+        }
 
-        for (int row = 0; row < Board.SIZE; row++) {
-            for (int col = 0; col < Board.SIZE; col++) {
-                if (board().get(col, row) == Piece.KING) {
-                    return sq(col, row);
+        /**
+         * Return true iff my value is no longer needed, because an earlier
+         * brother of mine or of one of my ancestors refuted its parent, or
+         * time is up.
+         */
+        private boolean stopped() {
+            for (Brother b = this; b._parent != null; b = b._parent) {
+                if (b._parent._refuter < b._index) {
+                    return true;
                 }
             }
+            return _root._timeUp;
         }
 
-        System.out.println("Find King error!");
-        return null;
-    }
-
-    /**
-     * Return a heuristically determined maximum search depth
-     * based on characteristics of BOARD.
-     */
-    private static int maxDepth(Board board) {
-        return 4;
-    }
-
-
-    /**
-     * the path.
-     */
-    class Path {
         /**
-         * the score for the board.
+         * My parent, or null if I am the root.
          */
-        private int score;
+        private final Brother _parent;
         /**
-         * the path.
+         * The root of my search.
          */
-        private List<Move> path = new ArrayList<>();
+        private final Brother _root;
         /**
-         * the square.
+         * My place among my parent's moves, and the code of the move from
+         * its position to mine.
          */
-        private Square nowSq;
+        private final int _index, _move;
         /**
-         * whether the game ends.
+         * My position, searched on one thread at a time, or null once I
+         * am searched.
          */
-        private boolean end;
-
+        private Board _board;
         /**
-         * add move.
-         *
-         * @param sq the square
+         * The position reached by the same line of play in the last
+         * search that finished, if it split, or null.
          */
-        void addMove(Move sq) {
-            path.add(sq);
-
-        }
-    }
-
-    /**
-     * the direction.
-     */
-    class Direct {
+        private Brother _previous;
         /**
-         * the col of the direction.
+         * My children that split (see adopt).
          */
-        private int row;
+        private Brother[] _children = NO_BROTHERS;
         /**
-         * the row of the direction.
+         * True iff I have split.
          */
-        private int col;
-
+        private boolean _split;
         /**
-         * the direction.
-         *
-         * @param col1 the col of the direction
-         * @param row1 the row of the direction
+         * My distance from the root.
          */
-        Direct(int col1, int row1) {
-            this.row = row1;
-            this.col = col1;
-        }
+        private final int _ply;
+        /**
+         * See compute.
+         */
+        private final int _depth, _reduction, _alpha, _beta;
+        /**
+         * The number of extensions on the path to my position.
+         */
+        private final int _extensions;
+        /**
+         * The index of the first of my younger brothers known to refute
+         * me in my current search, or Integer.MAX_VALUE.
+         */
+        private volatile int _refuter = Integer.MAX_VALUE;
+        /**
+         * At the root, true once time is up.
+         */
+        private volatile boolean _timeUp;
+        /**
+         * The code of my best move, once the eldest has been searched.
+         */
+        private int _bestMove;
+    }
 
+    /**
+     * Return the value, to the side to move in BOARD, PLY levels below the
+     * root, of the game having been won by WINNER (see search).
+     */
+    private static int winValue(Piece winner, Board board, int ply) {
+        int value = Math.max(WINNING_VALUE - ply, WILL_WIN_VALUE);
+        return winner == board.turn() ? value : -value;
+    }
+
+    /**
+     * Return the greatest depth to search BOARD to, as set by the
+     * controller's depth command.  Within it, the depth actually reached
+     * depends on the time allowed.
+     */
+    private int maxDepth(Board board) {
+        return _controller.searchDepth();
     }
 
 }
@@ -0,0 +1,244 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+
+/** Tests of the AI's search.
+ *  @author Jianing Yu
+ */
+public class AITest {
+
+    /** Values of won positions, as in AI. */
+    private static final int
+        WINNING_VALUE = Integer.MAX_VALUE - 20,
+        WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
+
+    /** Return a controller for tests, executing each of COMMANDS. */
+    static Controller controller(String... commands) {
+        Controller result =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI(), false);
+        result.executeCommand("movetime 0");
+        for (String command : commands) {
+            result.executeCommand(command);
+        }
+        return result;
+    }
+
+    /** Return N positions reached by random play from the initial
+     *  position, chosen with seed SEED, none of them won. */
+    static List<Board> positions(int n, long seed) {
+        Random random = new Random(seed);
+        int[] moves = new int[Board.MAX_MOVES];
+        List<Board> result = new ArrayList<>();
+        while (result.size() < n) {
+            Board b = new Board();
+            int plies = 4 + random.nextInt(30);
+            for (int k = 0; k < plies && b.winner() == null; k += 1) {
+                b.makeMove(moves[random.nextInt(b.legalMoves(b.turn(),
+                                                             moves))]);
+            }
+            if (b.winner() == null) {
+                result.add(b);
+            }
+        }
+        return result;
+    }
+
+    /** Return an AI for the side to move in the current position of
+     *  CONTROL, which is set to POSITION. */
+    static AI player(Controller control, Board position) {
+        control.board().copy(position);
+        return new AI(position.turn(), control);
+    }
+
+    /** Return the value of winning or losing to WINNER, to the side to
+     *  move on B, PLY levels below the root, as in AI. */
+    static int winValue(Piece winner, Board b, int ply) {
+        int value = Math.max(WINNING_VALUE - ply, WILL_WIN_VALUE);
+        return winner == b.turn() ? value : -value;
+    }
+
+    /** Return the static value of B to the side to move. */
+    static int staticValue(Board b) {
+        return b.turn() == WHITE ? b.evaluate() : -b.evaluate();
+    }
+
+    /** Return the negamax value of B, PLY levels below the root, to the
+     *  side to move, by plain minimax to DEPTH with no pruning, the
+     *  leaves valued by quiescence if QUIESCE and statically otherwise. */
+    static int minimax(Board b, int depth, int ply, boolean quiesce) {
+        if (depth == 0 && quiesce) {
+            return quiescence(b, ply);
+        }
+        Piece winner = b.winner();
+        if (winner != null) {
+            return winValue(winner, b, ply);
+        }
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = depth == 0 ? 0 : b.legalMoves(b.turn(), moves);
+        if (n == 0) {
+            return staticValue(b);
+        }
+        int best = -Integer.MAX_VALUE;
+        for (int k = 0; k < n; k += 1) {
+            b.makeMove(moves[k]);
+            best = Math.max(best, -minimax(b, depth - 1, ply + 1, quiesce));
+            b.undo();
+        }
+        return best;
+    }
+
+    /** Return the quiescence value of B, PLY levels below the root, to
+     *  the side to move: the better of its static value and the values
+     *  of its captures and king escapes, found the same way. */
+    static int quiescence(Board b, int ply) {
+        Piece winner = b.winner();
+        if (winner != null) {
+            return winValue(winner, b, ply);
+        }
+        int best = staticValue(b);
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = b.captureMoves(b.turn(), moves);
+        for (int k = 0; k < n; k += 1) {
+            b.makeMove(moves[k]);
+            best = Math.max(best, -quiescence(b, ply + 1));
+            b.undo();
+        }
+        return best;
+    }
+
+    /** Check that the AI's search of each of POSITIONS under CONTROL to
+     *  DEPTH finds the value found by minimax (with quiescence iff
+     *  QUIESCE), and a move with that value. */
+    static void checkAgainstMinimax(Controller control, List<Board> positions,
+                                    int depth, boolean quiesce) {
+        control.executeCommand("depth " + depth);
+        for (Board position : positions) {
+            AI ai = player(control, position);
+            Move move = ai.findMove();
+            Board b = new Board(position);
+            int value = minimax(b, depth, 0, quiesce);
+            int sense = b.turn() == WHITE ? 1 : -1;
+            assertEquals("value at depth " + depth + " of\n" + b,
+                         value, sense * ai.score());
+            b.makeMove(move);
+            assertEquals("value of " + move + " at depth " + depth,
+                         value, -minimax(b, depth - 1, 1, quiesce));
+        }
+    }
+
+    @Test
+    public void searchMatchesMinimax() {
+        Controller control = controller("nullmove off", "lmr off",
+                                        "futility off", "extensions off");
+        List<Board> positions = positions(8, 3);
+        checkAgainstMinimax(control, positions, 1, true);
+        checkAgainstMinimax(control, positions, 2, true);
+    }
+
+    /** Return the move and score found, as "MOVE SCORE", for the side to
+     *  move in POSITION under a controller that executes COMMANDS. */
+    static String result(Board position, String... commands) {
+        AI ai = player(controller(commands), position);
+        Move move = ai.findMove();
+        return move + " " + ai.score();
+    }
+
+    /** Check that for each of POSITIONS, from DEPTH1 to DEPTH2, the
+     *  young-brothers-wait search on 1, 2, and 4 threads finds the move
+     *  and score that EXPECTED ("smp" or "ybwc") finds on one thread,
+     *  with SWITCHES executed for each. */
+    static void checkYoungBrothers(List<Board> positions, int depth1,
+                                   int depth2, String expected,
+                                   String... switches) {
+        for (int depth = depth1; depth <= depth2; depth += 1) {
+            List<String> setup = new ArrayList<>(Arrays.asList(switches));
+            setup.add("depth " + depth);
+            setup.add("threads 1");
+            setup.add("parallel " + expected);
+            for (Board position : positions) {
+                String serial = result(position, setup.toArray(new String[0]));
+                setup.set(setup.size() - 1, "parallel ybwc");
+                for (int threads = 1; threads <= 4; threads *= 2) {
+                    setup.set(setup.size() - 2, "threads " + threads);
+                    assertEquals("depth " + depth + " on " + threads
+                                 + " threads of\n" + position, serial,
+                                 result(position,
+                                        setup.toArray(new String[0])));
+                }
+                setup.set(setup.size() - 1, "parallel " + expected);
+                setup.set(setup.size() - 2, "threads 1");
+            }
+        }
+    }
+
+    @Test
+    public void youngBrothersMatchSerialSearch() {
+        String[] exact = { "nullmove off", "lmr off", "futility off" };
+        checkYoungBrothers(positions(20, 7), 2, 3, "smp", exact);
+        checkYoungBrothers(positions(4, 7), 4, 4, "smp", exact);
+    }
+
+    @Test
+    public void youngBrothersIgnoreThreads() {
+        checkYoungBrothers(positions(6, 7), 3, 5, "ybwc");
+    }
+
+    @Test
+    public void searchStopsAtMoveTime() {
+        for (String parallel : new String[] { "smp", "ybwc" }) {
+            Controller control = controller("movetime 100", "threads 2",
+                                            "parallel " + parallel);
+            for (Board position : positions(3, 5)) {
+                AI ai = player(control, position);
+                long start = System.nanoTime();
+                Move move = ai.findMove();
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                assertTrue(control.board().isLegal(move));
+                assertTrue("reached depth " + ai.depth(),
+                           ai.depth() >= 1
+                           && ai.depth() < Controller.MAX_SEARCH_DEPTH);
+                assertTrue("took " + millis + " ms", millis < 20_000);
+            }
+        }
+    }
+
+    @Test
+    public void searchLeavesBoardAlone() {
+        String[][] setups = {
+            { "threads 1" },
+            { "threads 3" },
+            { "threads 3", "parallel ybwc" },
+        };
+        for (String[] setup : setups) {
+            Controller control = controller(setup);
+            control.executeCommand("depth 3");
+            for (Board position : positions(4, 11)) {
+                AI ai = player(control, position);
+                Board board = control.board();
+                PositionKey before = board.encode();
+                long key = board.key();
+                int moves = board.moveCount();
+                Move move = ai.findMove();
+                assertTrue(board.isLegal(move));
+                assertEquals(before, board.encode());
+                assertEquals(key, board.key());
+                assertEquals(moves, board.moveCount());
+                assertNull(board.winner());
+                board.makeMove(move);
+                board.undo();
+                assertEquals(before, board.encode());
+                assertEquals(key, board.key());
+            }
+        }
+    }
+
+}
@@ -1,29 +1,75 @@
 package tablut;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Formatter;
 import java.util.HashSet;
 import java.util.List;
 
 import static tablut.Piece.*;
-import static tablut.Square.SQUARE_LIST;
 import static tablut.Square.sq;
+import static tablut.Utils.error;
 
 
 /**
  * The state of a Tablut Game.
  *
+ * A board has a Geometry, which fixes its size (9x9 by default, or 11x11
+ * or 13x13) and supplies the precomputed square, ray, and neighbor tables
+ * used below, so that none of the code here depends on the size.  The
+ * methods taking Squares and Moves address the 9x9 range of Square; the
+ * methods taking square indices and move codes work on any size.
+ *
+ * The position is kept as packed occupancy masks rather than as an array
+ * of Pieces.  Each of WHITE, BLACK, and KING has a mask of words() longs
+ * in which the square with index I is bit I % squaresPerWord() of word
+ * I / squaresPerWord() (see Geometry).  Whole rows are packed into each
+ * word, so no row straddles two words.  In addition, the combined
+ * occupancy of every row and column is kept as an int, and the squares a
+ * piece can slide to along a line are found with one lookup in a table
+ * indexed by position and occupancy (see Geometry.slides).
+ *
+ * Each position also has a 64-bit Zobrist key, maintained incrementally
+ * as pieces are put and removed and as the turn changes.  The keys of
+ * earlier positions are kept in a history array, and a small table of
+ * counts by key detects repetitions without searching the history in
+ * the usual case that there is none.
+ *
+ * The material and piece-square part of the static evaluation is kept
+ * the same way, as a running sum updated whenever a piece is put or
+ * removed, so that evaluate costs only a few lookups for the king.
+ *
+ * Moves are undone from a journal that records, for each move, only the
+ * squares it changed: the from and to squares, the squares of any
+ * captured pieces, and the previous winner and repetition flag.
+ *
+ * For each side, the board remembers a piece that was last found to have
+ * a legal move.  A move disturbs only a few lines, so that piece almost
+ * always can still move, and whether a side is stalemated is then
+ * usually answered by testing one piece.  This is a hint, not an
+ * incrementally maintained count of moves: when the remembered piece is
+ * blocked, the side's pieces are scanned for another, so a side that is
+ * stalemated or nearly so still costs time proportional to its pieces.
+ * A board may instead track moves (see trackMoves), keeping each side's
+ * exact number of legal moves up to date at some cost to every move; it
+ * then answers in constant time.  Tracking is off by default.
+ * A byte-per-square array mirrors the masks so that single squares are
+ * read with one load, and a list of the squares holding each kind of
+ * piece, kept up to date by the same code, lets pieces and the king be
+ * found without scanning the board.
+ *
  * @author Jianing Yu
  */
 class Board {
 
     /**
-     * The number of squares on a side of the board.
+     * The number of squares on a side of the standard board.
      */
     static final int SIZE = 9;
 
     /**
-     * The throne (or castle) square and its four surrounding squares..
+     * The throne (or castle) square and its four surrounding squares on
+     * the standard board.
      */
     static final Square THRONE = sq(4, 4),
             NTHRONE = sq(4, 5),
@@ -32,7 +78,7 @@ class Board {
             ETHRONE = sq(5, 4);
 
     /**
-     * Initial positions of attackers.
+     * Initial positions of attackers on the standard board.
      */
     static final Square[] INITIAL_ATTACKERS = {
             sq(0, 3), sq(0, 4), sq(0, 5), sq(1, 4),
@@ -42,18 +88,128 @@ class Board {
     };
 
     /**
-     * Initial positions of defenders of the king.
+     * Initial positions of defenders of the king on the standard board.
      */
     static final Square[] INITIAL_DEFENDERS = {
         NTHRONE, ETHRONE, STHRONE, WTHRONE,
             sq(4, 6), sq(4, 2), sq(2, 4), sq(6, 4)
     };
 
+    /**
+     * All Pieces, indexed by ordinal.
+     */
+    private static final Piece[] PIECES = Piece.values();
+
+    /**
+     * An upper bound on the number of legal moves for one side on a board
+     * of any size: no square can be reached from more than four
+     * directions.
+     */
+    static final int MAX_MOVES =
+        4 * Geometry.MAX_SIZE * Geometry.MAX_SIZE;
+
+    /**
+     * HOSTILE[t][q] is true iff a square holding the Piece with ordinal q
+     * is hostile to a piece with ordinal t.  The throne has its own rules
+     * (see hostile).
+     */
+    private static final boolean[][] HOSTILE =
+        new boolean[PIECES.length][PIECES.length];
+
+    /**
+     * CAPTURES[m][t] is true iff a piece with ordinal m moving next to a
+     * piece with ordinal t may capture it.
+     */
+    private static final boolean[][] CAPTURES =
+        new boolean[PIECES.length][PIECES.length];
+
+    static {
+        for (Piece t : PIECES) {
+            for (Piece q : PIECES) {
+                if (t != EMPTY && q != EMPTY) {
+                    HOSTILE[t.ordinal()][q.ordinal()] =
+                        q.side() == t.opponent()
+                        && (t != KING || q == BLACK);
+                    CAPTURES[q.ordinal()][t.ordinal()] =
+                        t.side() == q.opponent();
+                }
+            }
+        }
+    }
+
+    /**
+     * The value to white of a white piece other than the king.
+     */
+    private static final int WHITE_PIECE_VALUE = 200;
+
+    /**
+     * The value to black of a black piece.
+     */
+    private static final int BLACK_PIECE_VALUE = 100;
+
+    /**
+     * The further value to black of a black piece one row or column in
+     * from the edge, where it cuts the king off from the edge squares
+     * behind it.
+     */
+    private static final int BLOCKADE_VALUE = 10;
+
+    /**
+     * The penalty to white for each row or column between the king and
+     * the nearest edge.
+     */
+    private static final int EDGE_DISTANCE_VALUE = 40;
+
+    /**
+     * The value to white of each empty square the king can move to.
+     */
+    private static final int KING_MOBILITY_VALUE = 5;
+
+    /**
+     * The value to white of each line along which the king can reach the
+     * edge.
+     */
+    private static final int OPEN_EDGE_VALUE = 300;
+
+    /**
+     * The penalty to white for each black piece next to the king.
+     */
+    private static final int KING_ATTACKER_VALUE = 80;
+
+    /**
+     * The number of entries in the repetition-count table (a power of 2).
+     */
+    private static final int REPETITION_TABLE_SIZE = 1 << 12;
+
+    /**
+     * The number of moves of undo history a new board has room for
+     * before its history arrays grow.
+     */
+    private static final int INITIAL_HISTORY = 64;
+
+    /**
+     * Field layout of undo-journal entries: a square index occupies
+     * SQUARE_FIELD bits and a piece ordinal PIECE_FIELD bits.
+     */
+    private static final int
+        SQUARE_FIELD = 0xff, PIECE_FIELD = 0x3,
+        TO_SHIFT = 8, MOVED_SHIFT = 16, WINNER_SHIFT = 18,
+        REPEATED_FLAG = 1 << 20;
+
     /**
      * Initializes a game board with SIZE squares on a side in the
      * initial position.
      */
     Board() {
+        this(Geometry.TABLUT);
+    }
+
+    /**
+     * Initializes a game board with the shape GEOMETRY in its initial
+     * position.
+     */
+    Board(Geometry geometry) {
+        this(geometry, INITIAL_HISTORY);
         init();
     }
 
@@ -61,9 +217,68 @@ class Board {
      * Initializes a copy of MODEL.
      */
     Board(Board model) {
+        this(model.geometry(), model._history.length);
         copy(model);
     }
 
+    /**
+     * Allocate a board with the shape GEOMETRY and room for HISTORY moves
+     * of undo history, but set up no position: the caller must init or
+     * copy it.  Unlike init, this does no work beyond the allocation.
+     */
+    private Board(Geometry geometry, int history) {
+        _geometry = geometry;
+        _size = geometry.size();
+        _throne = geometry.throne();
+        _center = _size / 2;
+        _squaresPerWord = geometry.squaresPerWord();
+        _words = geometry.words();
+        _row = geometry.rows();
+        _col = geometry.cols();
+        _word = geometry.wordTable();
+        _bit = geometry.bitTable();
+        _edge = geometry.edge();
+        _throneArea = geometry.throneArea();
+        _neighbors = geometry.neighbors();
+        _beyond = geometry.beyond();
+        _throneSteps = geometry.throneSteps();
+        _rays = geometry.rays();
+        _slides = geometry.slides();
+        _zobrist = geometry.zobrist();
+        _blackToMove = geometry.blackToMove();
+
+        int squares = geometry.squares();
+        _masks = new long[PIECES.length][_words];
+        _cells = new byte[squares];
+        _rowOcc = new int[_size];
+        _colOcc = new int[_size];
+        _pieceLists = new int[PIECES.length][squares];
+        _listSlots = new int[squares];
+        _rowSpans = new int[squares];
+        _colSpans = new int[squares];
+        _landings = new long[_words];
+        _placement = geometry.placement();
+        _history = new long[history];
+        _irreversibles = new int[history];
+        _journal = new int[history];
+        _capturedBase = new int[history];
+        _captured = new int[history];
+    }
+
+    /**
+     * Return my shape.
+     */
+    Geometry geometry() {
+        return _geometry;
+    }
+
+    /**
+     * Return the number of squares on a side.
+     */
+    int size() {
+        return _size;
+    }
+
     /**
      * Copies MODEL into me.
      */
@@ -71,28 +286,151 @@ class Board {
         if (model == this) {
             return;
         }
-        init();
+        if (model._geometry != _geometry) {
+            throw error("cannot copy a %s board into a %s board",
+                        model._geometry, _geometry);
+        }
+        for (int p = 0; p < PIECES.length; p += 1) {
+            System.arraycopy(model._masks[p], 0, _masks[p], 0, _words);
+            System.arraycopy(model._pieceLists[p], 0, _pieceLists[p], 0,
+                             model._pieceCounts[p]);
+        }
+        System.arraycopy(model._cells, 0, _cells, 0, _cells.length);
+        System.arraycopy(model._rowOcc, 0, _rowOcc, 0, _size);
+        System.arraycopy(model._colOcc, 0, _colOcc, 0, _size);
+        System.arraycopy(model._pieceCounts, 0, _pieceCounts, 0,
+                         PIECES.length);
+        System.arraycopy(model._listSlots, 0, _listSlots, 0,
+                         _listSlots.length);
+        System.arraycopy(model._mover, 0, _mover, 0, PIECES.length);
+        _tracking = model._tracking;
+        if (_tracking) {
+            System.arraycopy(model._rowSpans, 0, _rowSpans, 0,
+                             _rowSpans.length);
+            System.arraycopy(model._colSpans, 0, _colSpans, 0,
+                             _colSpans.length);
+            System.arraycopy(model._mobility, 0, _mobility, 0,
+                             PIECES.length);
+        }
+        _value = model._value;
+        _turn = model._turn;
+        _winner = model._winner;
+        _moveCount = model._moveCount;
+        _repeated = model._repeated;
+        lim = model.lim;
+        _key = model._key;
+
+        int n = model._historySize;
+        if (_history.length < n) {
+            _history = new long[model._history.length];
+            _irreversibles = new int[model._history.length];
+            _journal = new int[model._history.length];
+            _capturedBase = new int[model._history.length];
+        }
+        System.arraycopy(model._history, 0, _history, 0, n);
+        System.arraycopy(model._irreversibles, 0, _irreversibles, 0, n);
+        System.arraycopy(model._journal, 0, _journal, 0, n);
+        System.arraycopy(model._capturedBase, 0, _capturedBase, 0, n);
+        if (_captured.length < model._capturedSize) {
+            _captured = new int[model._captured.length];
+        }
+        System.arraycopy(model._captured, 0, _captured, 0,
+                         model._capturedSize);
+        _historySize = n;
+        _capturedSize = model._capturedSize;
+        _irreversible = model._irreversible;
+        System.arraycopy(model._repetitions, 0, _repetitions, 0,
+                         REPETITION_TABLE_SIZE);
+    }
+
+    /**
+     * Return an immutable record of the current state, without history.
+     */
+    BoardSnapshot snapshot() {
+        return new BoardSnapshot(encode(), _winner, _repeated, _moveCount,
+                                 _key, lim);
+    }
+
+    /**
+     * Set my state to that recorded in SNAPSHOT, with no history.
+     */
+    void restore(BoardSnapshot snapshot) {
+        decode(snapshot.position());
+        _winner = snapshot.winner();
+        _repeated = snapshot.repeatedPosition();
+        _moveCount = snapshot.moveCount();
+        lim = snapshot.moveLimit();
     }
 
     /**
      * Clears the board to the initial position.
      */
     void init() {
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                bPiece[i][j] = Piece.EMPTY;
-            }
+        clear();
+        set(KING, _throne);
+        for (int index : _geometry.defenders()) {
+            set(WHITE, index);
         }
-        bPiece[4][4] = Piece.KING;
-        for (Square p : INITIAL_DEFENDERS) {
-            bPiece[p.row()][p.col()] = Piece.WHITE;
+        for (int index : _geometry.attackers()) {
+            set(BLACK, index);
         }
-        for (Square s : INITIAL_ATTACKERS) {
-            bPiece[s.row()][s.col()] = Piece.BLACK;
-        }
-        stack.clear();
         _turn = BLACK;
+        _key ^= _blackToMove;
+    }
+
+    /**
+     * Remove all pieces and history, leaving white to move.
+     */
+    private void clear() {
+        for (long[] mask : _masks) {
+            Arrays.fill(mask, 0L);
+        }
+        _key = 0;
+        _value = 0;
+        Arrays.fill(_cells, (byte) EMPTY.ordinal());
+        Arrays.fill(_rowOcc, 0);
+        Arrays.fill(_colOcc, 0);
+        Arrays.fill(_pieceCounts, 0);
+        if (_tracking) {
+            Arrays.fill(_rowSpans, 0);
+            Arrays.fill(_colSpans, 0);
+            Arrays.fill(_mobility, 0);
+        }
+        _turn = WHITE;
         _winner = null;
+        _repeated = false;
+        _moveCount = 0;
+        clearUndo();
+    }
+
+    /**
+     * Return the compact key of the current position: the contents of
+     * every square and the side to move.
+     */
+    PositionKey encode() {
+        return PositionKey.encode(_size, _cells, _turn == BLACK);
+    }
+
+    /**
+     * Set the position to the one encoded by KEY, as a new game with no
+     * history and no winner.
+     */
+    void decode(PositionKey key) {
+        if (key.size() != _size) {
+            throw error("position key is for a %dx%d board",
+                        key.size(), key.size());
+        }
+        clear();
+        for (int i = 0; i < _cells.length; i += 1) {
+            Piece p = key.get(i);
+            if (p != EMPTY) {
+                set(p, i);
+            }
+        }
+        _turn = key.turn();
+        if (_turn == BLACK) {
+            _key ^= _blackToMove;
+        }
     }
 
     /**
@@ -129,14 +467,25 @@ class Board {
         return _repeated;
     }
 
+    /**
+     * Return the Zobrist key of the current position, including the side
+     * to move.
+     */
+    long key() {
+        return _key;
+    }
+
     /**
      * Record current position and set winner() next mover if the current
      * position is a repeat.
      */
     private void checkRepeated() {
-        for (int index = stack.size() - 1; index >= 0; index = index - 1) {
-            Piece[][] pieces = stack.get(index);
-            if (compare(pieces)) {
+        if (_repetitions[(int) _key & (REPETITION_TABLE_SIZE - 1)] == 0) {
+            return;
+        }
+        for (int index = _historySize - 1; index >= _irreversible;
+             index = index - 1) {
+            if (_history[index] == _key) {
                 _repeated = true;
                 _winner = _turn;
                 break;
@@ -145,20 +494,38 @@ class Board {
     }
 
     /**
-     * compare the pieces.
-     *
-     * @param pieces the pieces
-     * @return true or false
-     */
-    private boolean compare(Piece[][] pieces) {
-        for (int row = 0; row < SIZE; row++) {
-            for (int col = 0; col < SIZE; col++) {
-                if (bPiece[row][col] != pieces[row][col]) {
-                    return false;
-                }
-            }
+     * Add the current position to the history of positions encountered
+     * and start a journal entry for the move of MOVED from FROM to TO
+     * that is about to be made from it.
+     */
+    private void recordPosition(int from, int to, Piece moved) {
+        if (_historySize == _history.length) {
+            int n = 2 * _historySize;
+            _history = Arrays.copyOf(_history, n);
+            _irreversibles = Arrays.copyOf(_irreversibles, n);
+            _journal = Arrays.copyOf(_journal, n);
+            _capturedBase = Arrays.copyOf(_capturedBase, n);
         }
-        return true;
+        _history[_historySize] = _key;
+        _irreversibles[_historySize] = _irreversible;
+        _journal[_historySize] = from | (to << TO_SHIFT)
+            | (moved.ordinal() << MOVED_SHIFT)
+            | ((_winner == null ? 0 : _winner.ordinal()) << WINNER_SHIFT)
+            | (_repeated ? REPEATED_FLAG : 0);
+        _capturedBase[_historySize] = _capturedSize;
+        _historySize += 1;
+        _repetitions[(int) _key & (REPETITION_TABLE_SIZE - 1)] += 1;
+    }
+
+    /**
+     * Remove the last position added by recordPosition and make it the
+     * current position's key again.
+     */
+    private void unrecordPosition() {
+        _historySize -= 1;
+        _key = _history[_historySize];
+        _irreversible = _irreversibles[_historySize];
+        _repetitions[(int) _key & (REPETITION_TABLE_SIZE - 1)] -= 1;
     }
 
     /**
@@ -170,25 +537,111 @@ class Board {
     }
 
     /**
-     * Return location of the king.
+     * Return location of the king, or null if there is none.
      */
     Square kingPosition() {
-        return THRONE;
+        int k = kingIndex();
+        return k < 0 ? null : _geometry.square(k);
+    }
+
+    /**
+     * Return the index of the king's square, or -1 if there is no king.
+     */
+    int kingIndex() {
+        return _pieceCounts[KING.ordinal()] == 0
+            ? -1 : _pieceLists[KING.ordinal()][0];
+    }
+
+    /**
+     * Return the number of pieces of kind P on the board.  Unlike
+     * legalMoves, WHITE does not include the king here.
+     */
+    int pieceCount(Piece p) {
+        return _pieceCounts[p.ordinal()];
+    }
+
+    /**
+     * Return a heuristic estimate of the value of this position from
+     * white's point of view: material, with white pieces worth twice black
+     * ones, and the piece-square terms of placementValues, which include
+     * the king's distance from the edge, plus the king's freedom, its open
+     * lines to the edge, and the black pieces next to it.  The first two
+     * are kept up to date as pieces are put and removed, and the rest are
+     * read from the occupancy of the king's row and column, so that the
+     * cost does not depend on the number of pieces.
+     */
+    int evaluate() {
+        int score = _value, king = kingIndex();
+        if (king < 0) {
+            return score;
+        }
+        int row = _row[king], col = _col[king], last = _size - 1;
+        int across = span(_rowOcc[row], col), along = span(_colOcc[col], row);
+        score += KING_MOBILITY_VALUE
+            * (Integer.bitCount(across) + Integer.bitCount(along));
+        score += OPEN_EDGE_VALUE
+            * ((across & 1) + (across >>> last) + (along & 1)
+               + (along >>> last));
+        for (int sq : _neighbors[king]) {
+            if (sq >= 0 && _cells[sq] == BLACK.ordinal()) {
+                score -= KING_ATTACKER_VALUE;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Return the table of piece-square values for boards shaped like
+     * GEOMETRY: entry [p][i] is the value to white of the Piece with
+     * ordinal p standing on the square with index i.  Geometry builds it
+     * once per size (see Geometry.placement).
+     */
+    static int[][] placementValues(Geometry geometry) {
+        int size = geometry.size(), squares = geometry.squares();
+        int[][] values = new int[PIECES.length][squares];
+        for (int i = 0; i < squares; i += 1) {
+            int row = i / size, col = i % size;
+            int edge = Math.min(Math.min(row, size - 1 - row),
+                                Math.min(col, size - 1 - col));
+            values[WHITE.ordinal()][i] = WHITE_PIECE_VALUE;
+            values[BLACK.ordinal()][i] =
+                -BLACK_PIECE_VALUE - (edge == 1 ? BLOCKADE_VALUE : 0);
+            values[KING.ordinal()][i] = -EDGE_DISTANCE_VALUE * edge;
+        }
+        return values;
+    }
+
+    /**
+     * Store the square indices of all pieces of kind P in SQUARES,
+     * in no particular order, and return how many there are.  SQUARES
+     * must have room for pieceCount(P) entries.
+     */
+    int pieces(Piece p, int[] squares) {
+        int n = _pieceCounts[p.ordinal()];
+        System.arraycopy(_pieceLists[p.ordinal()], 0, squares, 0, n);
+        return n;
     }
 
     /**
      * Return the contents the square at S.
      */
     final Piece get(Square s) {
-        return get(s.col(), s.row());
+        return pieceAt(index(s));
     }
 
     /**
      * Return the contents of the square at (COL, ROW), where
-     * 0 <= COL, ROW <= 9.
+     * 0 <= COL, ROW < size().
      */
     final Piece get(int col, int row) {
-        return bPiece[row][col];
+        return pieceAt(row * _size + col);
+    }
+
+    /**
+     * Return the contents of the square with index INDEX.
+     */
+    final Piece get(int index) {
+        return pieceAt(index);
     }
 
     /**
@@ -202,14 +655,33 @@ class Board {
      * Set square S to P.
      */
     final void put(Piece p, Square s) {
-        bPiece[s.row()][s.col()] = p;
+        set(p, index(s));
+    }
+
+    /**
+     * Set the square with index INDEX to P.
+     */
+    final void put(Piece p, int index) {
+        set(p, index);
     }
 
     /**
      * Set square S to P and record for undoing.
      */
     final void revPut(Piece p, Square s) {
+        revPut(p, index(s));
+    }
 
+    /**
+     * Set the square with index INDEX to P and record for undoing.
+     */
+    private void revPut(Piece p, int index) {
+        if (_capturedSize == _captured.length) {
+            _captured = Arrays.copyOf(_captured, 2 * _capturedSize);
+        }
+        _captured[_capturedSize] = index | (_cells[index] << MOVED_SHIFT);
+        _capturedSize += 1;
+        set(p, index);
     }
 
     /**
@@ -225,40 +697,19 @@ class Board {
      * squares along it, other than FROM, must be empty.
      */
     boolean isUnblockedMove(Square from, Square to) {
-        if (from.row() != to.row() && from.col() != to.col()) {
+        if (!from.isRookMove(to)) {
             return false;
         }
-        if (from.row() == to.row() && from.col() == to.col()) {
-            return false;
-        }
-        if (bPiece[from.row()][from.col()] != KING
-                && kingPosition().row() == to.row()
-                && kingPosition().col() == to.col()) {
+        if (index(to) == _throne && get(from) != KING) {
             return false;
         }
         if (from.row() == to.row()) {
-            int fromCol = Math.min(from.col(), to.col());
-            int toCol = Math.max(from.col(), to.col());
-
-            for (int col = fromCol + 1; col < toCol; col++) {
-                Piece piece = bPiece[from.row()][col];
-                if (piece != Piece.EMPTY) {
-                    return false;
-                }
-            }
+            return (span(_rowOcc[from.row()], from.col()) & (1 << to.col()))
+                != 0;
+        } else {
+            return (span(_colOcc[from.col()], from.row()) & (1 << to.row()))
+                != 0;
         }
-        if (from.col() == to.col()) {
-            int fromRow = Math.min(from.row(), to.row());
-            int toRow = Math.max(from.row(), to.row());
-
-            for (int row = fromRow + 1; row < toRow; row++) {
-                if (bPiece[row][from.col()] != Piece.EMPTY) {
-                    return false;
-                }
-            }
-        }
-
-        return true;
     }
 
     /**
@@ -276,7 +727,7 @@ class Board {
             return false;
         }
 
-        if (bPiece[to.row()][to.col()] != Piece.EMPTY) {
+        if (occupied(index(to))) {
             return false;
         }
 
@@ -291,299 +742,184 @@ class Board {
         return isLegal(move.from(), move.to());
     }
 
+    /**
+     * Return true iff the move whose code (see Move.code) is CODE is
+     * legal in the current position.  CODE may be any int, such as one
+     * read from a file.
+     */
+    boolean isLegal(int code) {
+        int from = Move.fromIndex(code), to = Move.toIndex(code),
+            dir = Move.direction(code);
+        if (from >= _cells.length || to >= _cells.length
+            || pieceAt(from).side() != _turn) {
+            return false;
+        }
+        int steps = Math.abs(_row[to] - _row[from])
+            + Math.abs(_col[to] - _col[from]);
+        return steps > 0 && steps <= freeSteps(from, dir)
+            && _rays[from][dir][steps - 1] == code
+            && (to != _throne || _cells[from] == KING.ordinal());
+    }
+
     /**
      * Move FROM-TO, assuming this is a legal move.
      */
     void makeMove(Square from, Square to) {
         assert isLegal(from, to);
-        Piece[][] record = new Piece[SIZE][SIZE];
-        fillRecord(record);
-        put(bPiece[from.row()][from.col()], to);
-        put(Piece.EMPTY, from);
-        _moveCount++;
-        stack.add(record);
-        _turn = _turn == WHITE ? BLACK : WHITE;
-        setWiner(from, to);
-
+        makeMove(index(from), index(to));
     }
 
     /**
-     * initialize the board.
-     *
-     * @param record the piece
+     * Move the piece on the square with index FROM to the square with
+     * index TO, assuming this is a legal move.
      */
-    private void fillRecord(Piece[][] record) {
-        for (int row = 0; row < SIZE; row++) {
-            for (int col = 0; col < SIZE; col++) {
-                record[row][col] = bPiece[row][col];
-            }
-        }
+    private void makeMove(int from, int to) {
+        Piece moved = pieceAt(from);
+        recordPosition(from, to, moved);
+        set(EMPTY, from);
+        set(moved, to);
+        _moveCount++;
+        _turn = _turn == WHITE ? BLACK : WHITE;
+        _key ^= _blackToMove;
+        setWiner(to);
     }
 
     /**
-     * determine the victory condition.
+     * determine the victory condition and make any captures, after a
+     * piece has moved to the square with index TO.
      *
-     * @param from the square from
-     * @param to   the square to
+     * @param to the index of the square moved to
      */
-    private void setWiner(Square from, Square to) {
-        if (bPiece[to.row()][to.col()] == Piece.KING) {
-            if ((to.row() == 0 || to.row() == 8)
-                    || (to.col() == 0 || to.col() == 8)) {
-                _winner = WHITE;
-                return;
-            }
-        }
-        Piece toPiece = bPiece[to.row()][to.col()];
-        Piece enemyPiece = (toPiece == Piece.WHITE
-                || toPiece == Piece.KING) ? Piece.BLACK : Piece.WHITE;
-        Piece target = Piece.KING;
-        if (toPiece == Piece.WHITE) {
-            target = Piece.BLACK;
+    private void setWiner(int to) {
+        int mover = _cells[to];
+        if (mover == KING.ordinal() && isSet(_edge, to)) {
+            _winner = WHITE;
+            return;
         }
-        if (!hasMove(enemyPiece) && !hasMove(target)) {
-            _winner = toPiece;
+        Piece side = PIECES[mover].side();
+        Piece enemyPiece = side.opponent();
+        if (!hasMove(enemyPiece)) {
+            _winner = side;
             return;
         }
-        if (toPiece == Piece.BLACK && lim > 0) {
+        if (side == BLACK && lim > 0) {
             if ((_moveCount + 1) / 2 > lim) {
                 _winner = WHITE;
                 return;
             }
         }
-        if ((toPiece == Piece.WHITE || toPiece == Piece.KING) && lim > 0) {
+        if (side == WHITE && lim > 0) {
             if (_moveCount / 2 + 1 > lim) {
                 _winner = BLACK;
                 return;
             }
         }
-        if (to.col() - 1 >= 0) {
-            if (bPiece[to.row()][to.col() - 1] == enemyPiece
-                    || bPiece[to.row()][to.col() - 1] == target) {
-                checkAndRemovePiece(to.row(), to.col() - 1,
-                        toPiece, enemyPiece);
+        int[] neighbors = _neighbors[to], beyond = _beyond[to];
+        boolean[] captures = CAPTURES[mover];
+        for (int dir = 0; dir < 4; dir += 1) {
+            int sq1 = neighbors[dir];
+            if (sq1 < 0 || !captures[_cells[sq1]]) {
+                continue;
             }
-        }
-        if (to.col() + 1 <= 8) {
-            if (bPiece[to.row()][to.col() + 1] == enemyPiece
-                    || bPiece[to.row()][to.col() + 1] == target) {
-                checkAndRemovePiece(to.row(), to.col() + 1,
-                        toPiece, enemyPiece);
-            }
-        }
-        if (to.row() - 1 >= 0) {
-            if (bPiece[to.row() - 1][to.col()] == enemyPiece
-                    || bPiece[to.row() - 1][to.col()] == target) {
-                checkAndRemovePiece(to.row() - 1,
-                        to.col(), toPiece, enemyPiece);
-            }
-        }
-        if (to.row() + 1 <= 8) {
-            if (bPiece[to.row() + 1][to.col()] == enemyPiece
-                    || bPiece[to.row() + 1][to.col()] == target) {
-                checkAndRemovePiece(to.row() + 1,
-                        to.col(), toPiece, enemyPiece);
+            int target = _cells[sq1];
+            if (target == KING.ordinal() && isSet(_throneArea, sq1)) {
+                checkKingWin(sq1);
+            } else if (beyond[dir] >= 0 && hostile(beyond[dir], target)) {
+                capture(sq1);
+                if (target == KING.ordinal()) {
+                    _winner = BLACK;
+                }
             }
         }
     }
 
     /**
-     * remove the captured piece.
-     *
-     * @param row        row of the piece
-     * @param col        col of the piece
-     * @param toPiece    the piece
-     * @param enemyPiece the enemy piece
+     * check captured condition.
+     * @param index the index of the square on the far side of the target
+     * @param target the ordinal of the piece that may be captured
+     * @return true iff the square is hostile to target
      */
-    private void checkAndRemovePiece(int row, int col, Piece toPiece,
-                                     Piece enemyPiece) {
-
-        Piece target = buildTarget(col, row, toPiece);
-
-        if (checkSurround(row, col, toPiece)) {
-            return;
+    private boolean hostile(int index, int target) {
+        int occupant = _cells[index];
+        if (HOSTILE[target][occupant]) {
+            return true;
         }
-
-        if (row == 4 && col == 4 && bPiece[row][col] == Piece.KING) {
-            checkKingWin();
+        if (index != _throne) {
+            return false;
         }
-        checkCapture(row, col, toPiece, enemyPiece, target);
-
+        if (occupant == EMPTY.ordinal()) {
+            return true;
+        }
+        return target == WHITE.ordinal() && throneHostileToWhite();
     }
 
     /**
-     * check captured condition.
-     * @param row the row
-     * @param col the col
-     * @param toPiece the toPiece
-     * @param enemyPiece to enemyPiece
-     * @param target the target
-     */
-    private void checkCapture(int row, int col, Piece toPiece,
-                              Piece enemyPiece, Piece target) {
-        int enemyCount = 0;
-        int index = row - 1;
-        if (index < 0) {
-            enemyCount = 0;
-        } else if (bPiece[index][col] == toPiece || bPiece[index][col] == target
-                || (index == 4 && col == 4 && bPiece[4][4] == Piece.EMPTY)) {
-            enemyCount++;
-        }
-        index = row + 1;
-        if (index > 8) {
-            enemyCount = 0;
-        } else if (bPiece[index][col] == toPiece || bPiece[index][col] == target
-                || (index == 4 && col == 4
-                && bPiece[4][4] == Piece.EMPTY)) {
-            enemyCount++;
-        }
-        if (enemyCount == 2) {
-            if (bPiece[row][col] == Piece.KING && (row == 4 && col == 4)) {
-                return;
-            }
-            if (bPiece[row][col] == Piece.KING && !(row == 4 && col == 4)) {
-                capture(sq(row - 1, col), sq(row + 1, col));
-                _winner = BLACK;
-            } else {
-                capture(sq(row - 1, col), sq(row + 1, col));
-            }
-            return;
-        }
-        enemyCount = 0;
-        index = col - 1;
-        if (index < 0) {
-            enemyCount = 0;
-        } else if (bPiece[row][index] == toPiece
-                || bPiece[row][index] == target || (row == 4 && index == 4
-                && bPiece[4][4] == Piece.EMPTY)) {
-            enemyCount++;
-        }
-        index = col + 1;
-        if (index > 8) {
-            enemyCount = 0;
-        } else if (bPiece[row][index] == toPiece || bPiece[row][index] == target
-                || (row == 4 && index == 4 && bPiece[4][4] == Piece.EMPTY)) {
-            enemyCount++;
-        }
-        if (enemyCount == 2) {
-            if (bPiece[row][col] == Piece.KING && (row == 4 && col == 4)) {
-                return;
-            }
-            if (bPiece[row][col] == Piece.KING && !(row == 4 && col == 4)) {
-                capture(sq(row, col - 1), sq(row, col + 1));
-                _winner = BLACK;
-            } else {
-                capture(sq(row, col - 1), sq(row, col + 1));
+     * Return true iff the king is on the throne and three of the four
+     * squares around it hold black pieces, which makes the throne hostile
+     * to white pieces.
+     */
+    private boolean throneHostileToWhite() {
+        int blackCount = 0;
+        for (int sq : _neighbors[_throne]) {
+            if (_cells[sq] == BLACK.ordinal()) {
+                blackCount++;
             }
         }
-
+        return blackCount == 3;
     }
 
     /**
-     * check surround capture condition.
-     * @param row the row
-     * @param col the col
-     * @param toPiece the toPiece
-     * @return true or false
+     * check if the king is captured on or next to the throne, where it
+     * must be surrounded by black pieces or the empty throne.
+     * @param kingSq the index of the square of the king
      */
-    private boolean checkSurround(int row, int col, Piece toPiece) {
-        if (bPiece[row][col] == KING) {
-            if (sq(col, row) == NTHRONE) {
-                if (bPiece[NTHRONE.row()][NTHRONE.col() - 1] == BLACK
-                        && bPiece[NTHRONE.row()][NTHRONE.col() + 1] == BLACK
-                        && bPiece[NTHRONE.row() + 1][NTHRONE.col()] == BLACK
-                ) {
-                    _winner = BLACK;
-                    bPiece[row][col] = EMPTY;
-
-                }
-                return true;
-            }
-            if (sq(col, row) == STHRONE) {
-                if (bPiece[STHRONE.row()][STHRONE.col() + 1] == BLACK
-                        && bPiece[STHRONE.row()][STHRONE.col() - 1] == BLACK
-                        && bPiece[STHRONE.row() - 1][STHRONE.col()] == BLACK
-                ) {
-                    _winner = BLACK;
-                    bPiece[row][col] = EMPTY;
-                }
-                return true;
-            }
-            if (sq(col, row) == WTHRONE) {
-                if (bPiece[WTHRONE.row()][WTHRONE.col() - 1] == BLACK
-                        && bPiece[WTHRONE.row() + 1][WTHRONE.col()] == BLACK
-                        && bPiece[WTHRONE.row() - 1][WTHRONE.col()] == BLACK
-                ) {
-                    _winner = BLACK;
-                    bPiece[row][col] = EMPTY;
-                }
-                return true;
-            }
-            if (sq(col, row) == ETHRONE) {
-                if (bPiece[ETHRONE.row()][ETHRONE.col() + 1] == BLACK
-                        && bPiece[ETHRONE.row() + 1][ETHRONE.col()] == BLACK
-                        && bPiece[ETHRONE.row() - 1][ETHRONE.col()] == BLACK
-                ) {
-                    _winner = BLACK;
-                    bPiece[row][col] = EMPTY;
-                }
-                return true;
-            }
+    private void checkKingWin(int kingSq) {
+        if (kingSurrounded(kingSq)) {
+            capture(kingSq);
+            _winner = BLACK;
         }
-
-        return false;
     }
 
     /**
-     * build the target.
-     * @param col the col
-     * @param row the row
-     * @param toPiece the toPiece
-     * @return the target piece
+     * Return true iff every square next to the king's square KINGSQ holds a
+     * black piece or is the empty throne.
      */
-    private Piece buildTarget(int col, int row, Piece toPiece) {
-
-        Piece target = Piece.KING;
-
-        if (toPiece == Piece.BLACK) {
-            target = Piece.BLACK;
-        }
-        if (toPiece == Piece.KING) {
-            return Piece.WHITE;
-        }
-        if (bPiece[4][4] == Piece.KING && toPiece == Piece.BLACK) {
-            int blackCount = 0;
-            if (bPiece[3][4] == Piece.BLACK) {
-                blackCount++;
-            }
-            if (bPiece[5][4] == Piece.BLACK) {
-                blackCount++;
-            }
-            if (bPiece[4][3] == Piece.BLACK) {
-                blackCount++;
-            }
-            if (bPiece[4][5] == Piece.BLACK) {
-                blackCount++;
-            }
-            if (blackCount == 3) {
-                target = Piece.KING;
+    private boolean kingSurrounded(int kingSq) {
+        for (int sq : _neighbors[kingSq]) {
+            if (!HOSTILE[KING.ordinal()][_cells[sq]] && sq != _throne) {
+                return false;
             }
         }
-
-        return target;
+        return true;
     }
 
     /**
-     * check if the king wins.
+     * Return true iff the legal move whose code is CODE would capture a
+     * piece (including the king), by the same rules as makeMove.
      */
-    private void checkKingWin() {
-        if (bPiece[3][4] == Piece.BLACK
-                && bPiece[5][4] == Piece.BLACK
-                && bPiece[4][3] == Piece.BLACK
-                && bPiece[4][5] == Piece.BLACK) {
-            bPiece[4][4] = Piece.EMPTY;
-            _winner = BLACK;
+    boolean isCapture(int code) {
+        int from = Move.fromIndex(code), to = Move.toIndex(code);
+        byte mover = _cells[from];
+        _cells[from] = (byte) EMPTY.ordinal();
+        _cells[to] = mover;
+        boolean result = false;
+        int[] neighbors = _neighbors[to], beyond = _beyond[to];
+        boolean[] captures = CAPTURES[mover];
+        for (int dir = 0; dir < 4 && !result; dir += 1) {
+            int sq1 = neighbors[dir];
+            if (sq1 < 0 || !captures[_cells[sq1]]) {
+                continue;
+            }
+            int target = _cells[sq1];
+            if (target == KING.ordinal() && isSet(_throneArea, sq1)) {
+                result = kingSurrounded(sq1);
+            } else {
+                result = beyond[dir] >= 0 && hostile(beyond[dir], target);
+            }
         }
+        _cells[to] = (byte) EMPTY.ordinal();
+        _cells[from] = mover;
+        return result;
     }
 
     /**
@@ -595,37 +931,79 @@ class Board {
     }
 
     /**
-     * Capture the piece between SQ0 and SQ2, assuming a piece just moved to
-     * SQ0 and the necessary conditions are satisfied.
+     * Make the move whose code (see Move.code) is CODE, assuming it is a
+     * legal move.  As for makeMove(Move), a repeated position ends the
+     * game, and undo takes the move back.
+     */
+    void makeMove(int code) {
+        assert isLegal(code);
+        makeMove(Move.fromIndex(code), Move.toIndex(code));
+        checkRepeated();
+    }
+
+    /**
+     * Pass: give the move to the other side without moving anything.
+     * This is not a legal move of the game; the search uses it to ask
+     * whether the side to move is so well off that it could win even if
+     * it did nothing (null-move pruning).  No position before the pass
+     * counts as a repetition of one after it.  Since a pass is not a
+     * move of the game, it leaves moveCount alone and so brings neither
+     * side nearer the move limit.  Undo takes the pass back like any
+     * other move.  There must be no winner.
+     */
+    void makeNullMove() {
+        recordPosition(0, 0, EMPTY);
+        _irreversible = _historySize;
+        _turn = _turn.opponent();
+        _key ^= _blackToMove;
+    }
+
+    /**
+     * Capture the piece on the square with index INDEX, assuming the
+     * necessary conditions are satisfied.
      */
-    private void capture(Square sq0, Square sq2) {
-        bPiece[(sq0.col() + sq2.col()) / 2]
-                [(sq0.row() + sq2.row()) / 2] = Piece.EMPTY;
+    private void capture(int index) {
+        revPut(EMPTY, index);
+        _irreversible = _historySize;
     }
 
     /**
-     * Undo one move.  Has no effect on the initial board.
+     * Undo one move or pass.  Has no effect on the initial board.
      */
     void undo() {
-        if (_moveCount > 0) {
+        if (_historySize > 0) {
+            int moved = (_journal[_historySize - 1] >>> MOVED_SHIFT)
+                & PIECE_FIELD;
             undoPosition();
-            revPut(null, null);
-            _moveCount--;
+            if (moved != EMPTY.ordinal()) {
+                _moveCount--;
+            }
+            _turn = _turn == WHITE ? BLACK : WHITE;
         }
     }
 
     /**
      * Remove record of current position in the set of positions encountered,
-     * unless it is a repeated position or we are at the first move.
+     * and restore the squares changed by the last move from its journal
+     * entry.
      */
     private void undoPosition() {
-        Piece[][] pre = stack.remove(stack.size() - 1);
-        for (int row = 0; row < SIZE; row++) {
-            for (int col = 0; col < SIZE; col++) {
-                bPiece[row][col] = pre[row][col];
-            }
+        int entry = _journal[_historySize - 1];
+        int base = _capturedBase[_historySize - 1];
+        while (_capturedSize > base) {
+            _capturedSize -= 1;
+            int captured = _captured[_capturedSize];
+            set(PIECES[captured >>> MOVED_SHIFT], captured & SQUARE_FIELD);
         }
-        _repeated = false;
+        Piece moved = PIECES[(entry >>> MOVED_SHIFT) & PIECE_FIELD];
+        if (moved != EMPTY) {
+            set(EMPTY, (entry >>> TO_SHIFT) & SQUARE_FIELD);
+            set(moved, entry & SQUARE_FIELD);
+        }
+        int winner = (entry >>> WINNER_SHIFT) & PIECE_FIELD;
+        _winner = winner == 0 ? null : PIECES[winner];
+        _repeated = (entry & REPEATED_FLAG) != 0;
+        unrecordPosition();
     }
 
     /**
@@ -633,100 +1011,377 @@ class Board {
      * current position or win status.
      */
     void clearUndo() {
-        stack.clear();
+        _historySize = 0;
+        _capturedSize = 0;
+        _irreversible = 0;
+        Arrays.fill(_repetitions, (short) 0);
     }
 
     /**
      * Return a new mutable list of all legal moves on the current board for
-     * SIDE (ignoring whose turn it is at the moment).
+     * SIDE (ignoring whose turn it is at the moment).  The moves of WHITE
+     * include those of the king.
      */
     List<Move> legalMoves(Piece side) {
-        List<Move> moves = new ArrayList<>();
-        List<Square> squares = new ArrayList<>();
-        for (int row = 0; row < SIZE; row++) {
-            for (int col = 0; col < SIZE; col++) {
-                if (get(col, row) == side) {
-                    squares.add(sq(col, row));
-                }
-            }
-        }
-        for (Square sq : squares) {
-            moves.addAll(legalMoves(sq));
+        int[] codes = new int[MAX_MOVES];
+        int n = legalMoves(side, codes);
+        List<Move> moves = new ArrayList<>(n);
+        for (int k = 0; k < n; k += 1) {
+            moves.add(Move.mv(_geometry.square(Move.fromIndex(codes[k])),
+                              _geometry.square(Move.toIndex(codes[k]))));
         }
         return moves;
     }
 
     /**
-     * @param sq the square
-     * @return the list of the move
+     * Store the codes (see Move.code) of all legal moves on the current
+     * board for SIDE (ignoring whose turn it is) in MOVES, starting at
+     * index 0, and return their number.  MOVES must have room for
+     * MAX_MOVES entries.  Allocates nothing.
      */
-    private List<Move> legalMoves(Square sq) {
-        List<Move> moves = new ArrayList<>();
-        int sqRow = sq.row();
-        int sqCol = sq.col();
-        for (int row = sqRow + 1; row < SIZE; row++) {
-            if (get(sqCol, row) == Piece.EMPTY) {
-                if (sq(row, sqCol) == THRONE) {
-                    continue;
-                }
-                Move mv = Move.mv(sq, sq(sqCol, row));
-                if (mv != null) {
-                    moves.add(mv);
+    int legalMoves(Piece side, int[] moves) {
+        int n = 0;
+        for (Piece p : PIECES) {
+            if (p == EMPTY || (p != side && p.side() != side)) {
+                continue;
+            }
+            long[] mask = _masks[p.ordinal()];
+            for (int w = 0; w < _words; w += 1) {
+                for (long m = mask[w]; m != 0; m &= m - 1) {
+                    n = legalMoves(w * _squaresPerWord
+                                   + Long.numberOfTrailingZeros(m),
+                                   p, moves, n);
                 }
-            } else {
-                break;
             }
         }
-        for (int row = sqRow - 1; row >= 0; row--) {
-            if (get(sqCol, row) == Piece.EMPTY) {
-                if (sq(row, sqCol) == THRONE) {
-                    continue;
-                }
-                Move mv = Move.mv(sq, sq(sqCol, row));
-                if (mv != null) {
-                    moves.add(mv);
+        return n;
+    }
+
+    /**
+     * Store the codes of the legal moves for SIDE (ignoring whose turn it
+     * is) that would capture a piece, as for isCapture, in MOVES, starting
+     * at index 0, and return their number.  For WHITE, the king's moves to
+     * the edge, which win at once, are included too.  Only moves onto the
+     * empty squares next to pieces that SIDE may capture, opposite a
+     * square hostile to them, are considered, found by looking outward
+     * from those squares, so this costs far less than checking each of
+     * the legalMoves with isCapture.  MOVES must have room for MAX_MOVES
+     * entries.  Allocates nothing.
+     */
+    int captureMoves(Piece side, int[] moves) {
+        long[] landings = _landings;
+        Arrays.fill(landings, 0L);
+        for (Piece p : PIECES) {
+            if (p == EMPTY || p.side() != side.opponent()) {
+                continue;
+            }
+            int target = p.ordinal();
+            int[] list = _pieceLists[target];
+            for (int k = _pieceCounts[target] - 1; k >= 0; k -= 1) {
+                int[] neighbors = _neighbors[list[k]];
+                boolean surround = p == KING && isSet(_throneArea, list[k]);
+                for (int dir = 0; dir < 4; dir += 1) {
+                    int sq = neighbors[dir], far = neighbors[(dir + 2) & 3];
+                    if (sq >= 0 && !occupied(sq)
+                        && (surround || far >= 0 && hostile(far, target))) {
+                        landings[_word[sq]] |= _bit[sq];
+                    }
                 }
-            } else {
-                break;
             }
         }
-        for (int col = sqCol - 1; col >= 0; col--) {
-            if (get(col, sqRow) == Piece.EMPTY) {
-                if (sq(sqRow, col) == THRONE) {
-                    continue;
+        int n = 0;
+        for (int w = 0; w < _words; w += 1) {
+            for (long m = landings[w]; m != 0; m &= m - 1) {
+                int to = w * _squaresPerWord + Long.numberOfTrailingZeros(m);
+                for (int dir = 0; dir < 4; dir += 1) {
+                    int from = nearestPiece(to, dir);
+                    if (from < 0) {
+                        continue;
+                    }
+                    Piece p = pieceAt(from);
+                    if (p.side() != side || (to == _throne && p != KING)) {
+                        continue;
+                    }
+                    int code = Move.code(from, to, (dir + 2) & 3);
+                    if ((p == KING && isSet(_edge, to)) || isCapture(code)) {
+                        moves[n++] = code;
+                    }
                 }
-                Move mv = Move.mv(sq, sq(col, sqRow));
-                if (mv != null) {
-                    moves.add(mv);
-                }
-            } else {
-                break;
             }
         }
-        for (int col = sqCol + 1; col < SIZE; col++) {
-            if (get(col, sqRow) == Piece.EMPTY) {
-                if (sq(sqRow, col) == THRONE) {
-                    continue;
+        int king = kingIndex();
+        if (side == WHITE && king >= 0) {
+            for (int dir = 0; dir < 4; dir += 1) {
+                int[] ray = _rays[king][dir];
+                int steps = freeSteps(king, dir);
+                if (steps > 0 && steps == ray.length) {
+                    int code = ray[steps - 1];
+                    if (!isSet(landings, Move.toIndex(code))) {
+                        moves[n++] = code;
+                    }
                 }
-                Move mv = Move.mv(sq, sq(col, sqRow));
-                if (mv != null) {
-                    moves.add(mv);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Store the codes of the legal moves of the piece on the square with
+     * index INDEX in MOVES, starting at index 0, and return their number
+     * (0 if the square is empty).  Allocates nothing.
+     */
+    int pieceMoves(int index, int[] moves) {
+        Piece p = pieceAt(index);
+        return p == EMPTY ? 0 : legalMoves(index, p, moves, 0);
+    }
+
+    /**
+     * Store the codes of the moves of piece P on the square with index
+     * INDEX in MOVES, starting at N, and return the new number of moves.
+     * @param index the index of the square
+     * @param p the piece on it
+     * @param moves the buffer of move codes
+     * @param n the number of codes already in moves
+     * @return the number of codes in moves afterwards
+     */
+    private int legalMoves(int index, Piece p, int[] moves, int n) {
+        int row = _row[index], col = _col[index];
+        int rowSpan, colSpan;
+        if (_tracking) {
+            rowSpan = _rowSpans[index];
+            colSpan = _colSpans[index];
+        } else {
+            rowSpan = span(_rowOcc[row], col);
+            colSpan = span(_colOcc[col], row);
+        }
+        int north = Integer.bitCount(colSpan >>> row),
+            east = Integer.bitCount(rowSpan >>> col);
+        n = addRay(index, 0, north, p, moves, n);
+        n = addRay(index, 1, east, p, moves, n);
+        n = addRay(index, 2, Integer.bitCount(colSpan) - north, p, moves, n);
+        return addRay(index, 3, Integer.bitCount(rowSpan) - east, p, moves, n);
+    }
+
+    /**
+     * Copy the codes of the first STEPS moves in direction DIR from the
+     * square with index INDEX (from the geometry's rays) into MOVES, starting
+     * at N, leaving out a move to the throne unless P is the king.
+     * Return the new number of moves.
+     */
+    private int addRay(int index, int dir, int steps, Piece p,
+                       int[] moves, int n) {
+        int[] ray = _rays[index][dir];
+        int throne = _throneSteps[index][dir] - 1;
+        if (p != KING && throne >= 0 && throne < steps) {
+            System.arraycopy(ray, 0, moves, n, throne);
+            System.arraycopy(ray, throne + 1, moves, n + throne,
+                             steps - throne - 1);
+            return n + steps - 1;
+        }
+        System.arraycopy(ray, 0, moves, n, steps);
+        return n + steps;
+    }
+
+    /**
+     * Return the squares that P on the square with index INDEX can move to
+     * along its row (if ALONGROW) or its column, as a mask of columns or of
+     * rows respectively.  Only the king may land on the throne.
+     */
+    private int slide(int index, Piece p, boolean alongRow) {
+        int row = _row[index], col = _col[index];
+        if (alongRow) {
+            return landings(span(_rowOcc[row], col), row, p);
+        } else {
+            return landings(span(_colOcc[col], row), col, p);
+        }
+    }
+
+    /**
+     * Return the squares in SPAN, the reachable squares of P along the row
+     * or column LINE, on which P may land: all of them unless LINE passes
+     * through the throne and P is not the king.
+     */
+    private int landings(int span, int line, Piece p) {
+        return p != KING && line == _center ? span & ~(1 << _center) : span;
+    }
+
+    /**
+     * Keep the squares that each piece can reach up to date as the board
+     * changes iff ON (initially off).  Each change then patches only the
+     * pieces whose rows or columns reach the changed square, which makes
+     * makeMove and undo dearer, but legalMoves then reads the squares
+     * instead of computing them, and hasMove and mobility answer at once.
+     */
+    void trackMoves(boolean on) {
+        if (on && !_tracking) {
+            Arrays.fill(_mobility, 0);
+            for (int index = 0; index < _cells.length; index += 1) {
+                _rowSpans[index] = _colSpans[index] = 0;
+                if (occupied(index)) {
+                    retrack(index, true);
+                    retrack(index, false);
                 }
-            } else {
-                break;
             }
         }
-        return moves;
+        _tracking = on;
+    }
+
+    /**
+     * Return true iff moves are being tracked (see trackMoves).
+     */
+    boolean tracksMoves() {
+        return _tracking;
+    }
+
+    /**
+     * Return the number of legal moves of SIDE, WHITE or BLACK, where the
+     * moves of WHITE include those of the king, ignoring whose turn it is.
+     * Moves must be tracked (see trackMoves).
+     */
+    int mobility(Piece side) {
+        assert _tracking && side != KING;
+        return _mobility[side.ordinal()];
+    }
+
+    /**
+     * Recompute the squares that the piece on the occupied square with
+     * index INDEX can reach along its row (if ALONGROW) or its column,
+     * adjusting the mobility of its side.
+     */
+    private void retrack(int index, boolean alongRow) {
+        int row = _row[index], col = _col[index];
+        Piece p = pieceAt(index);
+        int[] spans;
+        int span, line;
+        if (alongRow) {
+            spans = _rowSpans;
+            span = span(_rowOcc[row], col);
+            line = row;
+        } else {
+            spans = _colSpans;
+            span = span(_colOcc[col], row);
+            line = col;
+        }
+        _mobility[p.side().ordinal()] +=
+            Integer.bitCount(landings(span, line, p))
+            - Integer.bitCount(landings(spans[index], line, p));
+        spans[index] = span;
+    }
+
+    /**
+     * Forget the reachable squares of P, which is leaving the square with
+     * index INDEX.
+     */
+    private void untrack(int index, Piece p) {
+        _mobility[p.side().ordinal()] -=
+            Integer.bitCount(landings(_rowSpans[index], _row[index], p))
+            + Integer.bitCount(landings(_colSpans[index], _col[index], p));
+        _rowSpans[index] = _colSpans[index] = 0;
+    }
+
+    /**
+     * Update the reachable squares of the piece now on the square with
+     * index INDEX, if any, and of the nearest piece in each direction
+     * from it, whose lines are the only others that INDEX can block.
+     */
+    private void retrackAround(int index) {
+        int row = _row[index], col = _col[index];
+        int rowSpan = span(_rowOcc[row], col),
+            colSpan = span(_colOcc[col], row);
+        if (occupied(index)) {
+            retrack(index, true);
+            retrack(index, false);
+        }
+        int north = row + Integer.bitCount(colSpan >>> row) + 1,
+            east = col + Integer.bitCount(rowSpan >>> col) + 1,
+            south = row - Integer.bitCount(colSpan & ((1 << row) - 1)) - 1,
+            west = col - Integer.bitCount(rowSpan & ((1 << col) - 1)) - 1;
+        if (north < _size) {
+            retrack(north * _size + col, false);
+        }
+        if (south >= 0) {
+            retrack(south * _size + col, false);
+        }
+        if (east < _size) {
+            retrack(row * _size + east, true);
+        }
+        if (west >= 0) {
+            retrack(row * _size + west, true);
+        }
+    }
+
+    /**
+     * Return the number of empty squares in a line from the square with
+     * index INDEX in direction DIR (as for Square.rookMove), up to the
+     * nearest occupied square or the edge.
+     */
+    int freeSteps(int index, int dir) {
+        int row = _row[index], col = _col[index];
+        switch (dir) {
+        case 0:
+            return Integer.bitCount(span(_colOcc[col], row) >>> row);
+        case 1:
+            return Integer.bitCount(span(_rowOcc[row], col) >>> col);
+        case 2:
+            return Integer.bitCount(span(_colOcc[col], row) << ~row << 1);
+        default:
+            return Integer.bitCount(span(_rowOcc[row], col) << ~col << 1);
+        }
+    }
+
+    /**
+     * Return the index of the nearest occupied square in direction DIR
+     * (as for Square.rookMove) from the square with index INDEX, or -1 if
+     * there is none.
+     */
+    int nearestPiece(int index, int dir) {
+        int[] ray = _rays[index][dir];
+        int steps = freeSteps(index, dir);
+        return steps < ray.length ? Move.toIndex(ray[steps]) : -1;
     }
 
     /**
-     * Return true iff SIDE has a legal move.
+     * Return true iff SIDE has a legal move.  The king alone counts as a
+     * side here, and WHITE includes the king.  If moves are tracked, the
+     * tracked mobility of WHITE or BLACK answers at once.  Otherwise the
+     * remembered mover of SIDE is tried first; only if it is blocked are
+     * the other pieces of SIDE tried.
      */
     boolean hasMove(Piece side) {
-        if (legalMoves(side).isEmpty()) {
-            return false;
+        int s = side.ordinal();
+        if (_tracking && side != KING) {
+            return _mobility[s] > 0;
         }
-        return true;
+        if (canMove(_mover[s], side)) {
+            return true;
+        }
+        for (Piece p : PIECES) {
+            if (p == EMPTY || (p != side && p.side() != side)) {
+                continue;
+            }
+            long[] mask = _masks[p.ordinal()];
+            for (int w = 0; w < _words; w += 1) {
+                for (long m = mask[w]; m != 0; m &= m - 1) {
+                    int index = w * _squaresPerWord
+                        + Long.numberOfTrailingZeros(m);
+                    if (canMove(index, side)) {
+                        _mover[s] = index;
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return true iff the square with index INDEX holds a piece of SIDE
+     * (in the sense of hasMove) that has a legal move.
+     */
+    private boolean canMove(int index, Piece side) {
+        Piece p = pieceAt(index);
+        return p != EMPTY && (p == side || p.side() == side)
+            && (slide(index, p, true) != 0 || slide(index, p, false) != 0);
     }
 
     @Override
@@ -740,20 +1395,20 @@ class Board {
      */
     String toString(boolean coordinates) {
         Formatter out = new Formatter();
-        for (int r = SIZE - 1; r >= 0; r -= 1) {
+        for (int r = _size - 1; r >= 0; r -= 1) {
             if (coordinates) {
                 out.format("%2d", r + 1);
             } else {
                 out.format("  ");
             }
-            for (int c = 0; c < SIZE; c += 1) {
+            for (int c = 0; c < _size; c += 1) {
                 out.format(" %s", get(c, r));
             }
             out.format("%n");
         }
         if (coordinates) {
             out.format("  ");
-            for (char c = 'a'; c <= 'i'; c += 1) {
+            for (char c = 'a'; c < 'a' + _size; c += 1) {
                 out.format(" %c", c);
             }
             out.format("%n");
@@ -767,31 +1422,108 @@ class Board {
     private HashSet<Square> pieceLocations(Piece side) {
         assert side != EMPTY;
         HashSet<Square> locations = new HashSet<>();
-
-        for (int row = 0; row < SIZE; row++) {
-            for (int col = 0; col < SIZE; col++) {
-                if (get(row, col) == side) {
-                    locations.add(sq(col, row));
-                }
-            }
+        int[] list = _pieceLists[side.ordinal()];
+        for (int i = _pieceCounts[side.ordinal()] - 1; i >= 0; i -= 1) {
+            locations.add(_geometry.square(list[i]));
         }
-
         return locations;
     }
 
     /**
-     * Return the contents of _board in the order of SQUARE_LIST as a sequence
+     * Return the contents of _board in order of square index as a sequence
      * of characters: the toString values of the current turn and Pieces.
      */
     String encodedBoard() {
-        char[] result = new char[Square.SQUARE_LIST.size() + 1];
+        char[] result = new char[_cells.length + 1];
         result[0] = turn().toString().charAt(0);
-        for (Square sq : SQUARE_LIST) {
-            result[sq.index() + 1] = get(sq).toString().charAt(0);
+        for (int i = 0; i < _cells.length; i += 1) {
+            result[i + 1] = pieceAt(i).toString().charAt(0);
         }
         return new String(result);
     }
 
+    /**
+     * Return the index on this board of the square S.
+     */
+    private int index(Square s) {
+        return s.row() * _size + s.col();
+    }
+
+    /**
+     * Return the piece on the square with index INDEX.
+     */
+    private Piece pieceAt(int index) {
+        return PIECES[_cells[index]];
+    }
+
+    /**
+     * Set the square with index INDEX to P, keeping the piece masks and
+     * the row and column occupancies consistent.
+     */
+    private void set(Piece p, int index) {
+        int w = _word[index], row = _row[index], col = _col[index];
+        long b = bit(index);
+        int old = _cells[index], now = p.ordinal();
+        if (_tracking && old != now && old != EMPTY.ordinal()) {
+            untrack(index, PIECES[old]);
+        }
+        _value += _placement[now][index] - _placement[old][index];
+        if (old != EMPTY.ordinal()) {
+            _masks[old][w] &= ~b;
+            _key ^= _zobrist[old][index];
+            _rowOcc[row] &= ~(1 << col);
+            _colOcc[col] &= ~(1 << row);
+            int[] list = _pieceLists[old];
+            int last = list[--_pieceCounts[old]], slot = _listSlots[index];
+            list[slot] = last;
+            _listSlots[last] = slot;
+        }
+        _cells[index] = (byte) now;
+        if (p != EMPTY) {
+            _masks[now][w] |= b;
+            _key ^= _zobrist[now][index];
+            _rowOcc[row] |= 1 << col;
+            _colOcc[col] |= 1 << row;
+            int slot = _pieceCounts[now]++;
+            _pieceLists[now][slot] = index;
+            _listSlots[index] = slot;
+        }
+        if (_tracking && old != now) {
+            retrackAround(index);
+        }
+    }
+
+    /**
+     * Return true iff the square with index INDEX is occupied.
+     */
+    private boolean occupied(int index) {
+        return _cells[index] != EMPTY.ordinal();
+    }
+
+    /**
+     * Return the bit for square INDEX within its word of an occupancy mask.
+     */
+    private long bit(int index) {
+        return _bit[index];
+    }
+
+    /**
+     * Return true iff square INDEX is set in MASK.
+     */
+    private boolean isSet(long[] mask, int index) {
+        return (mask[_word[index]] & _bit[index]) != 0;
+    }
+
+    /**
+     * Return the positions along a line with occupancy OCC that can be
+     * reached by sliding from position POS: everything up to, but not
+     * including, the nearest occupied position on either side.  This is
+     * one lookup in the geometry's sliding table.
+     */
+    private int span(int occ, int pos) {
+        return _slides[(pos << _size) | occ];
+    }
+
     /**
      * Piece whose turn it is (WHITE or BLACK).
      */
@@ -810,16 +1542,169 @@ class Board {
      */
     private boolean _repeated;
     /**
-     * the board piece.
+     * My shape.
      */
-    private Piece[][] bPiece = new Piece[SIZE][SIZE];
+    private final Geometry _geometry;
+    /**
+     * The number of squares on a side, the index of the throne, and the
+     * row and column of the throne.
+     */
+    private final int _size, _throne, _center;
+    /**
+     * The layout of the occupancy masks (see Geometry).
+     */
+    private final int _squaresPerWord, _words;
+    /**
+     * The row, column, and occupancy-mask word of each square, from
+     * _geometry.
+     */
+    private final int[] _row, _col, _word;
+    /**
+     * The bit of each square within its occupancy-mask word, and the
+     * masks of the edge squares and of the throne and its neighbors,
+     * from _geometry.
+     */
+    private final long[] _bit, _edge, _throneArea;
+    /**
+     * The neighbor, beyond, and throne-distance tables of _geometry.
+     */
+    private final int[][] _neighbors, _beyond, _throneSteps;
+    /**
+     * The move codes along each ray, from _geometry.
+     */
+    private final int[][][] _rays;
+    /**
+     * The sliding table of _geometry (see span).
+     */
+    private final char[] _slides;
+    /**
+     * The Zobrist keys of _geometry.
+     */
+    private final long[][] _zobrist;
+    /**
+     * Key contribution of black having the move.
+     */
+    private final long _blackToMove;
+    /**
+     * The piece-square values for my shape (see placementValues), shared
+     * with every board of that shape.
+     */
+    private final int[][] _placement;
+    /**
+     * The sum of the piece-square values of the pieces on the board.
+     */
+    private int _value;
+    /**
+     * The occupancy masks, indexed by Piece ordinal (the EMPTY entry is
+     * unused).
+     */
+    private final long[][] _masks;
+    /**
+     * _cells[i] is the ordinal of the Piece on the square with index i.
+     */
+    private final byte[] _cells;
+    /**
+     * _rowOcc[r] has bit c set iff the square at column c, row r is
+     * occupied.
+     */
+    private final int[] _rowOcc;
+    /**
+     * _colOcc[c] has bit r set iff the square at column c, row r is
+     * occupied.
+     */
+    private final int[] _colOcc;
+    /**
+     * _pieceLists[p][0 .. _pieceCounts[p]-1] are the indices of the
+     * squares holding the Piece with ordinal p, in no particular order.
+     */
+    private final int[][] _pieceLists;
+    /**
+     * See _pieceLists.
+     */
+    private final int[] _pieceCounts = new int[PIECES.length];
+    /**
+     * For an occupied square with index i, _listSlots[i] is the position
+     * of i in the _pieceLists entry for the piece on it.
+     */
+    private final int[] _listSlots;
+    /**
+     * _mover[s] is the index of a square that last held a piece with a
+     * legal move for the side (in the sense of hasMove) with ordinal s.
+     * It is only a hint, checked before it is used.
+     */
+    private final int[] _mover = new int[PIECES.length];
+    /**
+     * True iff moves are tracked (see trackMoves).
+     */
+    private boolean _tracking;
+    /**
+     * While moves are tracked, _rowSpans[i] and _colSpans[i] are the spans
+     * (see span) of the piece on the square with index i along its row
+     * and its column, and 0 for an empty square.
+     */
+    private final int[] _rowSpans, _colSpans;
+    /**
+     * While moves are tracked, _mobility[s] is the number of legal moves
+     * of the side with ordinal s, as for mobility.
+     */
+    private final int[] _mobility = new int[PIECES.length];
+    /**
+     * Scratch mask of the squares captureMoves considers moving to.
+     */
+    private final long[] _landings;
     /**
      * the limit.
      */
     private int lim = 0;
     /**
-     * save the piece.
+     * Zobrist key of the current position.
+     */
+    private long _key;
+    /**
+     * _history[k] is the key of the position before the k-th move that
+     * has not been undone (counting from the last clearUndo).
+     */
+    private long[] _history;
+    /**
+     * _irreversibles[k] is the value of _irreversible when _history[k]
+     * was recorded.
+     */
+    private int[] _irreversibles;
+    /**
+     * _journal[k] describes the move made from the position _history[k]:
+     * the from square, the to square shifted by TO_SHIFT, the moved piece
+     * shifted by MOVED_SHIFT, the previous winner (EMPTY for none) shifted
+     * by WINNER_SHIFT, and REPEATED_FLAG if the previous position was a
+     * repetition.  The moved piece is EMPTY for a pass (see makeNullMove).
+     */
+    private int[] _journal;
+    /**
+     * _capturedBase[k] is the number of entries in _captured before the
+     * move _journal[k] was made.
+     */
+    private int[] _capturedBase;
+    /**
+     * The pieces removed by the moves in _journal, in order, each as a
+     * square index plus the piece shifted by MOVED_SHIFT.
+     */
+    private int[] _captured;
+    /**
+     * Number of valid entries in _captured.
+     */
+    private int _capturedSize;
+    /**
+     * Number of valid entries in _history.
+     */
+    private int _historySize;
+    /**
+     * Index in _history of the first position recorded since the last
+     * capture.  No earlier position can recur.
+     */
+    private int _irreversible;
+    /**
+     * Number of positions in _history whose key, masked to the table
+     * size, selects each entry.
      */
-    private List<Piece[][]> stack = new ArrayList<>();
+    private final short[] _repetitions = new short[REPETITION_TABLE_SIZE];
 
 }
@@ -0,0 +1,98 @@
+package tablut;
+
+/** An immutable record of the state of a Board at one moment: its
+ *  position, side to move, winner, move count, and move limit.  Since
+ *  all its fields are final, a snapshot may be handed to other threads
+ *  (for example through a volatile field) and read there without
+ *  locking, while the Board it came from goes on changing.  The history
+ *  of the game is not included.
+ *  @author Jianing Yu
+ */
+final class BoardSnapshot {
+
+    /** A snapshot of a board with position POSITION, winner WINNER (null
+     *  if none), whose current position is a repetition iff REPEATED,
+     *  with MOVECOUNT moves made, Zobrist key KEY, and move limit LIMIT
+     *  (0 if none). */
+    BoardSnapshot(PositionKey position, Piece winner, boolean repeated,
+                  int moveCount, long key, int limit) {
+        _position = position;
+        _winner = winner;
+        _repeated = repeated;
+        _moveCount = moveCount;
+        _key = key;
+        _limit = limit;
+    }
+
+    /** Return the contents of square S. */
+    Piece get(Square s) {
+        return _position.get(s.row() * _position.size() + s.col());
+    }
+
+    /** Return the contents of the square with index INDEX. */
+    Piece get(int index) {
+        return _position.get(index);
+    }
+
+    /** Return the side to move. */
+    Piece turn() {
+        return _position.turn();
+    }
+
+    /** Return the winner, or null if the game was not over. */
+    Piece winner() {
+        return _winner;
+    }
+
+    /** Return true iff the position was a repetition. */
+    boolean repeatedPosition() {
+        return _repeated;
+    }
+
+    /** Return the number of moves made. */
+    int moveCount() {
+        return _moveCount;
+    }
+
+    /** Return the Zobrist key of the position (see Board.key). */
+    long key() {
+        return _key;
+    }
+
+    /** Return the move limit, or 0 if there is none. */
+    int moveLimit() {
+        return _limit;
+    }
+
+    /** Return the compact key of the position. */
+    PositionKey position() {
+        return _position;
+    }
+
+    /** Return a new Board in my position, with my winner, move count,
+     *  and move limit, and with no history to undo. */
+    Board toBoard() {
+        Board result = new Board(Geometry.forSize(_position.size()));
+        result.restore(this);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return _position.toString();
+    }
+
+    /** The position. */
+    private final PositionKey _position;
+    /** The winner, or null. */
+    private final Piece _winner;
+    /** True iff the position was a repetition. */
+    private final boolean _repeated;
+    /** The number of moves made. */
+    private final int _moveCount;
+    /** The Zobrist key. */
+    private final long _key;
+    /** The move limit. */
+    private final int _limit;
+
+}
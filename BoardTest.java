@@ -0,0 +1,425 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+import static tablut.Square.sq;
+
+/** Tests of the rules, undo, keys, and copying of Board.
+ *  @author Jianing Yu
+ */
+public class BoardTest {
+
+    /** Return a standard board whose position is drawn in ROWS, the top
+     *  row (row 9) first, one character per square ('-', 'W', 'B', or
+     *  'K'), with TURN to move. */
+    static Board board(Piece turn, String... rows) {
+        int size = rows.length;
+        byte[] cells = new byte[size * size];
+        for (int r = 0; r < size; r += 1) {
+            for (int c = 0; c < size; c += 1) {
+                cells[(size - 1 - r) * size + c] =
+                    (byte) "-WBK".indexOf(rows[r].charAt(c));
+            }
+        }
+        Board b = new Board(Geometry.forSize(size));
+        b.decode(PositionKey.encode(size, cells, turn == BLACK));
+        return b;
+    }
+
+    /** Make the move denoted by MOVE on B, checking that it is legal. */
+    static void move(Board b, String move) {
+        Move mv = Move.mv(move);
+        assertTrue("illegal move " + move, b.isLegal(mv));
+        b.makeMove(mv);
+    }
+
+    /** Return the codes of the legal moves of SIDE on B, found by walking
+     *  each ray a square at a time. */
+    static Set<Integer> slowMoves(Board b, Piece side) {
+        Set<Integer> result = new HashSet<>();
+        int size = b.size(), throne = b.geometry().throne();
+        int[] dcol = { 0, 1, 0, -1 }, drow = { 1, 0, -1, 0 };
+        for (int from = 0; from < size * size; from += 1) {
+            Piece p = b.get(from);
+            if (p == EMPTY || p.side() != side) {
+                continue;
+            }
+            for (int dir = 0; dir < 4; dir += 1) {
+                int col = from % size + dcol[dir],
+                    row = from / size + drow[dir];
+                while (col >= 0 && row >= 0 && col < size && row < size
+                       && b.get(col, row) == EMPTY) {
+                    int to = row * size + col;
+                    if (to != throne || p == KING) {
+                        result.add(Move.code(from, to, dir));
+                    }
+                    col += dcol[dir];
+                    row += drow[dir];
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the codes of the legal moves of SIDE on B, as generated by
+     *  B, checking that there are no duplicates. */
+    static Set<Integer> moves(Board b, Piece side) {
+        int[] codes = new int[Board.MAX_MOVES];
+        int n = b.legalMoves(side, codes);
+        Set<Integer> result = new HashSet<>();
+        for (int k = 0; k < n; k += 1) {
+            assertTrue("duplicate move", result.add(codes[k]));
+        }
+        return result;
+    }
+
+    /** Check that TRACKED, which tracks moves, is in the same position as
+     *  PLAIN, which does not, and agrees with it about the legal moves of
+     *  each side. */
+    static void checkTracking(Board plain, Board tracked) {
+        assertEquals(plain.encode(), tracked.encode());
+        for (Piece side : new Piece[] { WHITE, BLACK }) {
+            Set<Integer> moves = moves(plain, side);
+            assertEquals(moves, moves(tracked, side));
+            assertEquals(moves.size(), tracked.mobility(side));
+            assertEquals(plain.hasMove(side), tracked.hasMove(side));
+        }
+        assertEquals(plain.hasMove(KING), tracked.hasMove(KING));
+    }
+
+    @Test
+    public void initialPosition() {
+        Board b = new Board();
+        assertEquals(BLACK, b.turn());
+        assertEquals(16, b.pieceCount(BLACK));
+        assertEquals(8, b.pieceCount(WHITE));
+        assertEquals(KING, b.get(sq("e5")));
+        assertEquals(sq("e5"), b.kingPosition());
+        assertNull(b.winner());
+        assertEquals(slowMoves(b, BLACK), moves(b, BLACK));
+        assertEquals(slowMoves(b, WHITE), moves(b, WHITE));
+    }
+
+    @Test
+    public void makeUndoRoundTrips() {
+        Random random = new Random(17);
+        int[] codes = new int[Board.MAX_MOVES];
+        for (int size = 9; size <= Geometry.MAX_SIZE; size += 2) {
+            for (int game = 0; game < 10; game += 1) {
+                Board b = new Board(Geometry.forSize(size)),
+                    fresh = new Board(b.geometry());
+                List<Long> keys = new ArrayList<>();
+                List<PositionKey> positions = new ArrayList<>();
+                List<Integer> values = new ArrayList<>();
+                while (b.winner() == null && keys.size() < 150) {
+                    assertEquals(slowMoves(b, b.turn()), moves(b, b.turn()));
+                    fresh.decode(b.encode());
+                    assertEquals("key differs from a new board's",
+                                 fresh.key(), b.key());
+                    assertEquals(fresh.evaluate(), b.evaluate());
+                    keys.add(b.key());
+                    positions.add(b.encode());
+                    values.add(b.evaluate());
+                    int n = b.legalMoves(b.turn(), codes);
+                    b.makeMove(codes[random.nextInt(n)]);
+                }
+                for (int k = keys.size() - 1; k >= 0; k -= 1) {
+                    b.undo();
+                    assertNull(b.winner());
+                    assertEquals((long) keys.get(k), b.key());
+                    assertEquals(positions.get(k), b.encode());
+                    assertEquals((int) values.get(k), b.evaluate());
+                }
+                assertEquals(0, b.moveCount());
+                assertEquals(new Board(b.geometry()).encode(), b.encode());
+            }
+        }
+    }
+
+    @Test
+    public void trackedMovesMatchUntracked() {
+        Random random = new Random(47);
+        int[] codes = new int[Board.MAX_MOVES];
+        for (int size = 9; size <= Geometry.MAX_SIZE; size += 2) {
+            for (int game = 0; game < 4; game += 1) {
+                Board plain = new Board(Geometry.forSize(size)),
+                    tracked = new Board(plain.geometry()),
+                    late = new Board(plain.geometry());
+                assertFalse(plain.tracksMoves());
+                tracked.trackMoves(true);
+                for (int ply = 0; ply < 300; ply += 1) {
+                    if (ply == 100) {
+                        late.trackMoves(true);
+                    }
+                    checkTracking(plain, tracked);
+                    if (late.tracksMoves()) {
+                        checkTracking(plain, late);
+                    }
+                    if (plain.winner() != null
+                        || plain.moveCount() > 0 && random.nextInt(4) == 0) {
+                        plain.undo();
+                        tracked.undo();
+                        late.undo();
+                    } else {
+                        int n = plain.legalMoves(plain.turn(), codes);
+                        int move = codes[random.nextInt(n)];
+                        plain.makeMove(move);
+                        tracked.makeMove(move);
+                        late.makeMove(move);
+                    }
+                }
+                Board copy = new Board(tracked);
+                assertTrue(copy.tracksMoves());
+                checkTracking(plain, copy);
+            }
+        }
+    }
+
+    @Test
+    public void captureBetweenTwoPieces() {
+        Board b = board(BLACK,
+                        "---------",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "----K----",
+                        "---------",
+                        "--BW---B-",
+                        "---------",
+                        "---------");
+        long key = b.key();
+        PositionKey position = b.encode();
+        move(b, "h3-e");
+        assertEquals(EMPTY, b.get(sq("d3")));
+        assertEquals(0, b.pieceCount(WHITE));
+        assertNull(b.winner());
+        b.undo();
+        assertEquals(WHITE, b.get(sq("d3")));
+        assertEquals(key, b.key());
+        assertEquals(position, b.encode());
+    }
+
+    @Test
+    public void noCaptureOfMovingPiece() {
+        Board b = board(WHITE,
+                        "---------",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "----K----",
+                        "---------",
+                        "--B-B----",
+                        "---W-----",
+                        "---------");
+        move(b, "d2-3");
+        assertEquals(WHITE, b.get(sq("d3")));
+        assertEquals(2, b.pieceCount(BLACK));
+    }
+
+    @Test
+    public void emptyThroneIsHostile() {
+        Board b = board(BLACK,
+                        "---------",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "----W----",
+                        "-------B-",
+                        "---------",
+                        "K--------");
+        move(b, "h3-e");
+        assertEquals(EMPTY, b.get(sq("e4")));
+    }
+
+    @Test
+    public void kingCapturedByTwoAwayFromThrone() {
+        Board b = board(BLACK,
+                        "---------",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "--BK---B-",
+                        "---------",
+                        "---------");
+        move(b, "h3-e");
+        assertEquals(BLACK, b.winner());
+        assertNull(b.kingPosition());
+        b.undo();
+        assertNull(b.winner());
+        assertEquals(sq("d3"), b.kingPosition());
+    }
+
+    @Test
+    public void kingOnThroneNeedsFourAttackers() {
+        Board b = board(BLACK,
+                        "---------",
+                        "---------",
+                        "---------",
+                        "----B----",
+                        "---BKB---",
+                        "B--------",
+                        "---------",
+                        "---------",
+                        "---------");
+        move(b, "a4-e");
+        assertEquals(BLACK, b.winner());
+        b.undo();
+        b.put(EMPTY, sq("f5"));
+        move(b, "a4-e");
+        assertNull(b.winner());
+        assertEquals(KING, b.get(sq("e5")));
+    }
+
+    @Test
+    public void kingBesideThroneNeedsThreeAttackers() {
+        Board b = board(BLACK,
+                        "---------",
+                        "---------",
+                        "B--------",
+                        "---BKB---",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "---------");
+        move(b, "a7-e");
+        assertEquals(BLACK, b.winner());
+        assertEquals(EMPTY, b.get(sq("e6")));
+    }
+
+    @Test
+    public void kingWinsAtEdge() {
+        Board b = board(WHITE,
+                        "--------B",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "--K------",
+                        "---------",
+                        "---------");
+        move(b, "c3-1");
+        assertEquals(WHITE, b.winner());
+        b.undo();
+        assertNull(b.winner());
+    }
+
+    @Test
+    public void onlyKingMayStopOnThrone() {
+        Board b = board(WHITE,
+                        "--------B",
+                        "---------",
+                        "---------",
+                        "---------",
+                        "-W-------",
+                        "---------",
+                        "---------",
+                        "----K----",
+                        "---------");
+        assertFalse(b.isLegal(Move.mv("b5-e")));
+        assertTrue(b.isLegal(Move.mv("b5-f")));
+        assertTrue(b.isLegal(Move.mv("e2-5")));
+        assertTrue(b.isLegal(Move.mv("e2-6")));
+    }
+
+    @Test
+    public void repeatedPositionEndsGame() {
+        Board b = new Board();
+        move(b, "a4-3");
+        move(b, "e3-d");
+        move(b, "a3-4");
+        assertNull(b.winner());
+        move(b, "d3-e");
+        assertTrue(b.repeatedPosition());
+        assertEquals(BLACK, b.winner());
+        b.undo();
+        assertFalse(b.repeatedPosition());
+        assertNull(b.winner());
+    }
+
+    @Test
+    public void passesDoNotCountTowardMoveLimit() {
+        Board b = new Board();
+        move(b, "a4-3");
+        move(b, "e3-d");
+        b.setMoveLimit(2);
+        PositionKey position = b.encode();
+        long key = b.key();
+        b.makeNullMove();
+        assertEquals(WHITE, b.turn());
+        assertEquals(2, b.moveCount());
+        move(b, "d3-2");
+        assertEquals(3, b.moveCount());
+        assertNull(b.winner());
+        b.undo();
+        assertEquals(2, b.moveCount());
+        b.undo();
+        assertEquals(BLACK, b.turn());
+        assertEquals(2, b.moveCount());
+        assertEquals(position, b.encode());
+        assertEquals(key, b.key());
+        b.undo();
+        assertEquals(1, b.moveCount());
+        assertEquals(WHITE, b.turn());
+    }
+
+    @Test
+    public void copiesAreIndependent() {
+        Board b = new Board();
+        move(b, "a4-3");
+        Board c = new Board(b);
+        assertEquals(b.encode(), c.encode());
+        assertEquals(b.key(), c.key());
+        PositionKey position = b.encode();
+        long key = b.key();
+        move(c, "e3-d");
+        assertEquals(position, b.encode());
+        assertEquals(key, b.key());
+        move(b, "e7-d");
+        c.undo();
+        assertEquals(position, c.encode());
+        c.undo();
+        assertEquals(new Board().encode(), c.encode());
+        assertEquals(WHITE, b.get(sq("d7")));
+        b.copy(c);
+        assertEquals(c.encode(), b.encode());
+        assertEquals(c.key(), b.key());
+    }
+
+    @Test
+    public void copiesUndoWholeHistory() {
+        Random random = new Random(29);
+        int[] codes = new int[Board.MAX_MOVES];
+        for (int size = 9; size <= Geometry.MAX_SIZE; size += 2) {
+            Board b = new Board(Geometry.forSize(size));
+            List<PositionKey> positions = new ArrayList<>();
+            while (b.winner() == null && positions.size() < 200) {
+                positions.add(b.encode());
+                b.makeMove(codes[random.nextInt(b.legalMoves(b.turn(),
+                                                             codes))]);
+            }
+            Board c = new Board(b);
+            assertEquals(b.encode(), c.encode());
+            assertEquals(b.winner(), c.winner());
+            for (int k = positions.size() - 1; k >= 0; k -= 1) {
+                c.undo();
+                assertEquals(positions.get(k), c.encode());
+            }
+            assertEquals(0, c.moveCount());
+            assertEquals(positions.size(), b.moveCount());
+        }
+    }
+
+}
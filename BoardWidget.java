@@ -94,25 +94,27 @@ class BoardWidget extends Pad {
     @Override
     public synchronized void paintComponent(Graphics2D g) {
         drawGrid(g);
-        Square.SQUARE_LIST.iterator().forEachRemaining(s -> drawPiece(g, s));
+        BoardSnapshot board = _board;
+        Square.SQUARE_LIST.iterator()
+            .forEachRemaining(s -> drawPiece(g, s, board.get(s)));
     }
 
-    /** Draw the contents of S on G. */
-    private void drawPiece(Graphics2D g, Square s) {
+    /** Draw PIECE, the contents of S, on G. */
+    private void drawPiece(Graphics2D g, Square s, Piece piece) {
         /** FIXME. */
-        if (_board.get(s) == Piece.BLACK) {
+        if (piece == Piece.BLACK) {
             g.setColor(Color.black);
             g.fillOval(cx(s), cy(s), PIECESIZE, PIECESIZE);
             g.setColor(Color.red);
             g.drawOval(cx(s), cy(s), PIECESIZE, PIECESIZE);
         }
-        if (_board.get(s) == Piece.WHITE) {
+        if (piece == Piece.WHITE) {
             g.setColor(Color.white);
             g.fillOval(cx(s), cy(s), PIECESIZE, PIECESIZE);
             g.setColor(Color.red);
             g.drawOval(cx(s), cy(s), PIECESIZE, PIECESIZE);
         }
-        if (_board.get(s) == Piece.KING) {
+        if (piece == Piece.KING) {
             g.setBackground(Color.orange);
             g.setFont(KING_FONT);
             g.fillOval(cx(s), cy(s), PIECESIZE, PIECESIZE);
@@ -146,8 +148,8 @@ class BoardWidget extends Pad {
     }
 
     /** Revise the displayed board according to BOARD. */
-    synchronized void update(Board board) {
-        _board.copy(board);
+    void update(BoardSnapshot board) {
+        _board = board;
         repaint();
     }
 
@@ -186,8 +188,9 @@ class BoardWidget extends Pad {
     /** Queue on which to post move commands (from mouse clicks). */
     private ArrayBlockingQueue<String> _commands;
 
-    /** Board being displayed. */
-    private final Board _board = new Board();
+    /** Board being displayed, replaced whole on each update so that
+     *  painting needs no lock against the game thread. */
+    private volatile BoardSnapshot _board = new Board().snapshot();
 
     /** True iff accepting moves from user. */
     private boolean _acceptingMoves;
@@ -46,6 +46,7 @@ final class Controller {
         _playing = true;
         _winner = null;
         _board.init();
+        _snapshot = _board.snapshot();
         while (_playing) {
             _view.update(this);
             String command;
@@ -81,6 +82,72 @@ final class Controller {
         return _board;
     }
 
+    /** Return a snapshot of the board as of the end of the last command.
+     *  Unlike board(), this may be called from any thread. */
+    BoardSnapshot snapshot() {
+        return _snapshot;
+    }
+
+    /** Return the transposition table shared by my automated players. */
+    TranspositionTable table() {
+        return _table;
+    }
+
+    /** Return the time allowed an automated player for each move, in
+     *  milliseconds, or 0 if there is no limit. */
+    int moveTime() {
+        return _moveTime;
+    }
+
+    /** Return the greatest depth an automated player should search to. */
+    int searchDepth() {
+        return _searchDepth;
+    }
+
+    /** Return the number of threads an automated player should search
+     *  with. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Make automated players search with THREADS threads, where
+     *  1 <= THREADS <= MAX_THREADS. */
+    void setThreads(int threads) {
+        if (threads < 1 || threads > MAX_THREADS) {
+            throw error("threads must be between 1 and %d", MAX_THREADS);
+        }
+        _threads = threads;
+    }
+
+    /** Return true iff automated players should use the deterministic
+     *  young-brothers-wait search, on however many threads they have,
+     *  rather than the default Lazy SMP search. */
+    boolean youngBrothersWait() {
+        return _youngBrothersWait;
+    }
+
+    /** Return true iff automated players should use null-move pruning. */
+    boolean nullMovePruning() {
+        return _nullMovePruning;
+    }
+
+    /** Return true iff automated players should search quiet moves that
+     *  are ordered late to a reduced depth. */
+    boolean lateMoveReductions() {
+        return _lateMoveReductions;
+    }
+
+    /** Return true iff automated players should use futility pruning. */
+    boolean futilityPruning() {
+        return _futilityPruning;
+    }
+
+    /** Return true iff automated players should search moves that make
+     *  threats against or by the king a level deeper. */
+    boolean threatExtensions() {
+        return _threatExtensions;
+    }
+
     /** Return a random integer in the range 0 inclusive to U, exclusive.
      *  Available for use by AIs that use random selections in some cases.
      *  Once setRandomSeed is called with a particular value, this method
@@ -174,16 +241,36 @@ final class Controller {
         new Command("manual\\s+(white|black)$", this::doManual),
         new Command("auto\\s+(white|black)$", this::doAuto),
         new Command("limit\\s+(\\d+)$", this::doLimit),
+        new Command("hash\\s+(\\d+)$", this::doHash),
+        new Command("movetime\\s+(\\d+)$", this::doMoveTime),
+        new Command("depth\\s+(\\d+)$", this::doDepth),
+        new Command("threads\\s+(\\d+)$", this::doThreads),
+        new Command("parallel\\s+(smp|ybwc)$", this::doParallel),
+        new Command("(nullmove|lmr|futility|extensions)\\s+(on|off)$",
+                    this::doSearchSwitch),
         new Command("toggle\\s+" + SQ + "$", this::doToggle),
         new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
     };
 
+    /** The initial size of the transposition table, in megabytes. */
+    private static final int DEFAULT_HASH_MEGABYTES = 16;
+
+    /** The initial time allowed an automated player for each move, in
+     *  milliseconds. */
+    private static final int DEFAULT_MOVE_TIME = 1000;
+
+    /** The greatest search depth that may be set. */
+    static final int MAX_SEARCH_DEPTH = 64;
+
+    /** The greatest number of search threads that may be set. */
+    static final int MAX_THREADS = 256;
+
     /** A Matcher whose Pattern matches comments. */
     private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
 
     /** Check that CMND is one of the valid Tablut commands and execute it, if
      *  so, raising an IllegalArgumentException otherwise. */
-    private void executeCommand(String cmnd) {
+    void executeCommand(String cmnd) {
         if (_logFile != null) {
             _logFile.println(cmnd);
             _logFile.flush();
@@ -199,6 +286,7 @@ final class Controller {
             parser._matcher.reset(cmnd);
             if (parser._matcher.matches()) {
                 parser._processor.accept(parser._matcher);
+                _snapshot = _board.snapshot();
                 return;
             }
         }
@@ -281,6 +369,81 @@ final class Controller {
         }
     }
 
+    /** Command "hash N" where N, the first captured group of MAT, is the
+     *  size of the transposition table in megabytes. */
+    private void doHash(Matcher mat) {
+        try {
+            _table.resize(Integer.parseInt(mat.group(1)));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "movetime N" where N, the first captured group of MAT, is
+     *  the time allowed for each automated move in milliseconds, or 0 for
+     *  no limit. */
+    private void doMoveTime(Matcher mat) {
+        try {
+            _moveTime = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "depth N" where N, the first captured group of MAT, is the
+     *  greatest depth an automated player searches to. */
+    private void doDepth(Matcher mat) {
+        int depth;
+        try {
+            depth = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (depth < 1 || depth > MAX_SEARCH_DEPTH) {
+            throw error("depth must be between 1 and %d", MAX_SEARCH_DEPTH);
+        }
+        _searchDepth = depth;
+    }
+
+    /** Command "threads N" where N, the first captured group of MAT, is
+     *  the number of threads each automated player searches with. */
+    private void doThreads(Matcher mat) {
+        try {
+            setThreads(Integer.parseInt(mat.group(1)));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "parallel smp" or "parallel ybwc", choosing how automated
+     *  players search on several threads.  The first captured group of MAT
+     *  is the choice. */
+    private void doParallel(Matcher mat) {
+        _youngBrothersWait = mat.group(1).equals("ybwc");
+    }
+
+    /** Command "nullmove", "lmr", "futility", or "extensions" (the first
+     *  captured group of MAT) followed by "on" or "off" (the second),
+     *  which turns that kind of selective search on or off for automated
+     *  players. */
+    private void doSearchSwitch(Matcher mat) {
+        boolean on = mat.group(2).equals("on");
+        switch (mat.group(1)) {
+        case "nullmove":
+            _nullMovePruning = on;
+            break;
+        case "lmr":
+            _lateMoveReductions = on;
+            break;
+        case "extensions":
+            _threatExtensions = on;
+            break;
+        default:
+            _futilityPruning = on;
+            break;
+        }
+    }
+
     /** Execute a move command matched in MAT. */
     private void doMove(Matcher mat) {
         _board.makeMove(Move.mv(mat.group(0)));
@@ -312,6 +475,9 @@ final class Controller {
     /** The board. */
     private Board _board = new Board();
 
+    /** A snapshot of _board, republished after each command. */
+    private volatile BoardSnapshot _snapshot = _board.snapshot();
+
     /** The winning side of the current game. */
     private Piece _winner;
 
@@ -321,6 +487,29 @@ final class Controller {
     /** The object that is displaying the current game. */
     private View _view;
 
+    /** The transposition table of my automated players. */
+    private TranspositionTable _table =
+        new TranspositionTable(DEFAULT_HASH_MEGABYTES);
+
+    /** Time allowed for each automated move, in milliseconds (0 if
+     *  unlimited). */
+    private int _moveTime = DEFAULT_MOVE_TIME;
+
+    /** The greatest depth searched by automated players. */
+    private int _searchDepth = MAX_SEARCH_DEPTH;
+
+    /** The number of threads used by each automated player. */
+    private int _threads = 1;
+
+    /** True iff automated players search with young brothers wait. */
+    private boolean _youngBrothersWait;
+
+    /** True iff automated players use null-move pruning, late move
+     *  reductions, futility pruning, and threat extensions,
+     *  respectively. */
+    private boolean _nullMovePruning = true, _lateMoveReductions = true,
+        _futilityPruning = true, _threatExtensions = true;
+
     /** My pseudo-random number generator. */
     private Random _randGen = new Random();
 
@@ -93,7 +93,7 @@ class GUI extends TopLevel implements View, Reporter {
 
     @Override
     public void update(Controller controller) {
-        Board board = controller.board();
+        BoardSnapshot board = controller.snapshot();
 
         _widget.update(board);
         if (board.winner() != null) {
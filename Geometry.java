@@ -0,0 +1,331 @@
+package tablut;
+
+import java.util.Random;
+
+import static tablut.Utils.*;
+
+/** The shape of a square tafl board with a throne at its center, and the
+ *  tables Board uses to generate moves, resolve captures, and evaluate
+ *  positions on it.  All tables are computed once per size, so code
+ *  using them has no size-dependent branches.  Squares are numbered as
+ *  for Square, by row * size() + col, and directions are as for
+ *  Square.rookMove.  The arrays returned by the accessors are shared
+ *  and must not be modified.
+ *  @author Jianing Yu
+ */
+final class Geometry {
+
+    /** The largest supported size. */
+    static final int MAX_SIZE = 13;
+
+    /** Column and row displacements of one step in each direction. */
+    private static final int[]
+        DCOL = { 0, 1, 0, -1 },
+        DROW = { 1, 0, -1, 0 };
+
+    /** Standard 9x9 Tablut. */
+    static final Geometry TABLUT = new Geometry(9, 1, 2, false);
+
+    /** 11x11 Hnefatafl, in the usual (Copenhagen) starting position. */
+    static final Geometry HNEFATAFL = new Geometry(11, 2, 2, true);
+
+    /** A 13x13 Tablut.  There is no settled starting position for this
+     *  size; this one extends the 11x11 pattern so that the attackers
+     *  again outnumber the defenders two to one. */
+    static final Geometry TABLUT_13 = new Geometry(13, 3, 3, true);
+
+    /** Return the Geometry for boards of SIZE squares on a side. */
+    static Geometry forSize(int size) {
+        switch (size) {
+        case 9:
+            return TABLUT;
+        case 11:
+            return HNEFATAFL;
+        case 13:
+            return TABLUT_13;
+        default:
+            throw error("unsupported board size: %d", size);
+        }
+    }
+
+    /** The geometry of a SIZE x SIZE board.  The attackers start on the
+     *  middle 2*EDGEHALF+1 squares of each edge and on the square inward
+     *  from the middle of each edge.  The defenders start on the ARM
+     *  squares nearest the throne in each direction and, if DIAGONALS, on
+     *  the four squares diagonally next to the throne. */
+    private Geometry(int size, int edgeHalf, int arm, boolean diagonals) {
+        assert size % 2 == 1 && size <= MAX_SIZE;
+        _size = size;
+        _squares = size * size;
+        int mid = size / 2;
+        _throne = index(mid, mid);
+        _rowsPerWord = Long.SIZE / size;
+        _squaresPerWord = _rowsPerWord * size;
+        _words = (size + _rowsPerWord - 1) / _rowsPerWord;
+
+        _row = new int[_squares];
+        _col = new int[_squares];
+        _word = new int[_squares];
+        _bit = new long[_squares];
+        _edge = new long[_words];
+        _throneArea = new long[_words];
+        _neighbors = new int[_squares][4];
+        _beyond = new int[_squares][4];
+        _throneSteps = new int[_squares][4];
+        _rays = new int[_squares][4][];
+        for (int i = 0; i < _squares; i += 1) {
+            int r = i / size, c = i % size;
+            _row[i] = r;
+            _col[i] = c;
+            _word[i] = i / _squaresPerWord;
+            _bit[i] = 1L << (i % _squaresPerWord);
+            if (r == 0 || c == 0 || r == size - 1 || c == size - 1) {
+                _edge[_word[i]] |= _bit[i];
+            }
+            if (Math.abs(r - mid) + Math.abs(c - mid) <= 1) {
+                _throneArea[_word[i]] |= _bit[i];
+            }
+            for (int d = 0; d < 4; d += 1) {
+                int steps = 0;
+                while (exists(c + (steps + 1) * DCOL[d],
+                              r + (steps + 1) * DROW[d])) {
+                    steps += 1;
+                }
+                int[] ray = _rays[i][d] = new int[steps];
+                for (int k = 1; k <= steps; k += 1) {
+                    int j = index(c + k * DCOL[d], r + k * DROW[d]);
+                    ray[k - 1] = Move.code(i, j, d);
+                    if (j == _throne) {
+                        _throneSteps[i][d] = k;
+                    }
+                }
+                _neighbors[i][d] = steps >= 1 ? Move.toIndex(ray[0]) : -1;
+                _beyond[i][d] = steps >= 2 ? Move.toIndex(ray[1]) : -1;
+            }
+        }
+
+        _attackers = new int[4 * (2 * edgeHalf + 2)];
+        _defenders = new int[4 * arm + (diagonals ? 4 : 0)];
+        int a, b;
+        a = b = 0;
+        for (int d = 0; d < 4; d += 1) {
+            int dc = DCOL[d], dr = DROW[d];
+            int ec = mid + dc * mid, er = mid + dr * mid;
+            for (int k = -edgeHalf; k <= edgeHalf; k += 1) {
+                _attackers[a++] = index(ec + k * dr, er + k * dc);
+            }
+            _attackers[a++] = index(ec - dc, er - dr);
+            for (int k = 1; k <= arm; k += 1) {
+                _defenders[b++] = index(mid + k * dc, mid + k * dr);
+            }
+            if (diagonals) {
+                int tc = DCOL[(d + 1) % 4], tr = DROW[(d + 1) % 4];
+                _defenders[b++] = index(mid + dc + tc, mid + dr + tr);
+            }
+        }
+
+        _slides = new char[size << size];
+        for (int pos = 0; pos < size; pos += 1) {
+            for (int occ = 0; occ < 1 << size; occ += 1) {
+                int span = 0;
+                for (int p = pos + 1; p < size && (occ & (1 << p)) == 0;
+                     p += 1) {
+                    span |= 1 << p;
+                }
+                for (int p = pos - 1; p >= 0 && (occ & (1 << p)) == 0;
+                     p -= 1) {
+                    span |= 1 << p;
+                }
+                _slides[(pos << size) | occ] = (char) span;
+            }
+        }
+
+        _zobrist = new long[Piece.values().length][_squares];
+        Random keys = new Random(0x7AB1E7L);
+        for (int p = Piece.WHITE.ordinal(); p < _zobrist.length; p += 1) {
+            for (int i = 0; i < _squares; i += 1) {
+                _zobrist[p][i] = keys.nextLong();
+            }
+        }
+        _blackToMove = keys.nextLong();
+
+        _placement = Board.placementValues(this);
+    }
+
+    /** Return the number of squares on a side. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of squares. */
+    int squares() {
+        return _squares;
+    }
+
+    /** Return the index of the throne. */
+    int throne() {
+        return _throne;
+    }
+
+    /** Return true iff COL ROW is on the board. */
+    boolean exists(int col, int row) {
+        return col >= 0 && row >= 0 && col < _size && row < _size;
+    }
+
+    /** Return the index of the square at COL ROW. */
+    int index(int col, int row) {
+        return row * _size + col;
+    }
+
+    /** Return the index of the square named by S. */
+    int index(Square s) {
+        return s.row() * _size + s.col();
+    }
+
+    /** Return the Square with index INDEX.  It is an error if the square
+     *  lies outside the 9x9 range of Square. */
+    Square square(int index) {
+        return Square.sq(_col[index], _row[index]);
+    }
+
+    /** Return the number of whole rows packed into one word of an
+     *  occupancy mask. */
+    int rowsPerWord() {
+        return _rowsPerWord;
+    }
+
+    /** Return the number of squares held in one word of an occupancy
+     *  mask (whole rows only, so that no row straddles two words). */
+    int squaresPerWord() {
+        return _squaresPerWord;
+    }
+
+    /** Return the number of longs in an occupancy mask. */
+    int words() {
+        return _words;
+    }
+
+    /** Return the table of rows by square index. */
+    int[] rows() {
+        return _row;
+    }
+
+    /** Return the table of columns by square index. */
+    int[] cols() {
+        return _col;
+    }
+
+    /** Return the table giving the occupancy-mask word of each square. */
+    int[] wordTable() {
+        return _word;
+    }
+
+    /** Return the table giving the bit of each square in its word. */
+    long[] bitTable() {
+        return _bit;
+    }
+
+    /** Return the mask of edge squares. */
+    long[] edge() {
+        return _edge;
+    }
+
+    /** Return the mask of the throne and the squares next to it. */
+    long[] throneArea() {
+        return _throneArea;
+    }
+
+    /** Return the table whose entry [i][d] is the index of the square one
+     *  step from square i in direction d, or -1. */
+    int[][] neighbors() {
+        return _neighbors;
+    }
+
+    /** Return the table whose entry [i][d] is the index of the square two
+     *  steps from square i in direction d, or -1. */
+    int[][] beyond() {
+        return _beyond;
+    }
+
+    /** Return the table whose entry [i][d] is the number of steps from
+     *  square i to the throne in direction d, or 0 if the throne is not
+     *  that way. */
+    int[][] throneSteps() {
+        return _throneSteps;
+    }
+
+    /** Return the table whose entry [i][d] holds the codes (see
+     *  Move.code) of the moves from square i in direction d, in order of
+     *  increasing distance. */
+    int[][][] rays() {
+        return _rays;
+    }
+
+    /** Return the sliding table.  For a line (row or column) whose
+     *  occupied positions are the bits of OCC, entry (POS << size()) | OCC
+     *  is the set of positions that a piece at position POS can slide to
+     *  along the line: everything up to, but not including, the nearest
+     *  occupied position on either side.  Bit POS of OCC is ignored. */
+    char[] slides() {
+        return _slides;
+    }
+
+    /** Return the Zobrist key table, indexed by Piece ordinal and square.
+     *  The EMPTY entries are 0. */
+    long[][] zobrist() {
+        return _zobrist;
+    }
+
+    /** Return the key contribution of black having the move. */
+    long blackToMove() {
+        return _blackToMove;
+    }
+
+    /** Return the piece-square values of Board.evaluate, indexed by
+     *  Piece ordinal and square (see Board.placementValues). */
+    int[][] placement() {
+        return _placement;
+    }
+
+    /** Return the indices of the attackers' starting squares. */
+    int[] attackers() {
+        return _attackers;
+    }
+
+    /** Return the indices of the defenders' starting squares, not
+     *  counting the king's. */
+    int[] defenders() {
+        return _defenders;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%dx%d", _size, _size);
+    }
+
+    /** Board dimensions. */
+    private final int _size, _squares, _throne;
+    /** Occupancy-mask layout. */
+    private final int _rowsPerWord, _squaresPerWord, _words;
+    /** Per-square coordinates and mask positions. */
+    private final int[] _row, _col, _word;
+    /** See bitTable. */
+    private final long[] _bit;
+    /** See edge and throneArea. */
+    private final long[] _edge, _throneArea;
+    /** See neighbors, beyond, and throneSteps. */
+    private final int[][] _neighbors, _beyond, _throneSteps;
+    /** See rays. */
+    private final int[][][] _rays;
+    /** See slides. */
+    private final char[] _slides;
+    /** See zobrist. */
+    private final long[][] _zobrist;
+    /** See blackToMove. */
+    private final long _blackToMove;
+    /** See placement. */
+    private final int[][] _placement;
+    /** Starting squares. */
+    private final int[] _attackers, _defenders;
+
+}
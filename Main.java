@@ -15,15 +15,19 @@ import ucb.util.CommandArgs;
  */
 public class Main {
 
-    /** The main program.  ARGS may contain the option --display. */
+    /** The main program.  ARGS may contain the options --display and
+     *  --threads=N (the number of threads each automated player searches
+     *  with). */
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
+            new CommandArgs("--display --testing --strict --log={0,1}"
+                            + " --threads=(\\d+) --={0,2}",
                             args);
         if (!options.ok()) {
             System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--strict] [--threads=N]"
+                               + " [INPUT [OUTPUT]]");
             System.exit(1);
         }
 
@@ -96,7 +100,19 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+        Controller control =
+            new Controller(view, log, reporter, manualPlayer,
+                           new AI(), options.contains("--strict"));
+        if (options.contains("--threads")) {
+            try {
+                control.setThreads(Integer.parseInt(options.getFirst(
+                                                    "--threads")));
+            } catch (IllegalArgumentException excp) {
+                System.err.printf("Bad --threads option: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+        return control;
     }
 }
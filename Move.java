@@ -65,6 +65,42 @@ final class Move {
         return null;
     }
 
+    /** Return the Move whose code (see code(int, int, int)) is CODE, a
+     *  move on the standard board. */
+    static Move mv(int code) {
+        return MOVES[fromIndex(code)][toIndex(code)];
+    }
+
+    /** Return the int code of the move from the square with index FROM
+     *  to the square with index TO in direction DIR (as for
+     *  Square.rookMove): FROM in the low 8 bits, TO in the next 8, and
+     *  DIR in the 2 bits above those.  Codes let move generators, search,
+     *  and game records pass moves around as primitives; Moves are only
+     *  needed to read and print them.  No move has code 0. */
+    static int code(int from, int to, int dir) {
+        return from | (to << 8) | (dir << DIR_SHIFT);
+    }
+
+    /** Return the index of the square moved from in the move CODE. */
+    static int fromIndex(int code) {
+        return code & 0xff;
+    }
+
+    /** Return the index of the square moved to in the move CODE. */
+    static int toIndex(int code) {
+        return (code >>> 8) & 0xff;
+    }
+
+    /** Return the direction (as for Square.rookMove) of the move CODE. */
+    static int direction(int code) {
+        return (code >>> DIR_SHIFT) & 3;
+    }
+
+    /** Return my code. */
+    int code() {
+        return code(_from.index(), _to.index(), _from.direction(_to));
+    }
+
     /** Return true iff STR has the right format for a Move. */
     static boolean isGrammaticalMove(String str) {
         _moveMatcher.reset(str);
@@ -109,6 +145,9 @@ final class Move {
         return (_from.index() << 6) + _to.index();
     }
 
+    /** The position of the direction in a move code. */
+    private static final int DIR_SHIFT = 16;
+
     /** The cache of all Moves created. */
     private static final Move[][] MOVES = new Move[NUM_SQUARES][NUM_SQUARES];
 
@@ -0,0 +1,219 @@
+package tablut;
+
+/** Supplies the moves of one position to the search a few at a time, in
+ *  stages, so that moves are generated only as the search gets to them.
+ *  The stages are: the preferred moves (the transposition table's move
+ *  and the like), which need no generation at all; captures and the
+ *  king's escapes, from Board.captureMoves; the king's other moves toward
+ *  the edge; the two killer moves; and only then the remaining quiet
+ *  moves, best history score first.  A node at which one of the early
+ *  moves causes a cutoff never pays for the full move list.  Each move
+ *  is supplied once, and only legal moves are supplied.  A picker may be
+ *  reset and used again for another position.
+ *  @author Jianing Yu
+ */
+final class MovePicker {
+
+    /** The stages, in order. */
+    private static final int
+        PREFERRED = 0, CAPTURES = 1, KING = 2, KILLERS = 3, QUIETS = 4,
+        DONE = 5;
+
+    /** The greatest number of preferred moves. */
+    static final int MAX_PREFERRED = 4;
+
+    /** Start supplying the moves of BOARD for the side to move, using
+     *  KILLERS (the codes of two quiet moves, 0 if none) and HISTORY
+     *  (indexed by the squares moved from and to, as AI keeps it) to
+     *  order the quiet moves.  BOARD must be in the same position at each
+     *  call to next. */
+    void reset(Board board, int[] killers, int[][] history) {
+        _board = board;
+        _killers = killers;
+        _history = history;
+        _stage = PREFERRED;
+        _next = _count = _preferredCount = _emittedCount = 0;
+    }
+
+    /** Supply MOVE, if it is a legal move code, before all moves not so
+     *  preferred, after those preferred before it.  At most MAX_PREFERRED
+     *  moves may be preferred after each reset, and only before the first
+     *  call to next.  A MOVE of 0 is ignored. */
+    void prefer(int move) {
+        if (move != 0) {
+            _preferred[_preferredCount++] = move;
+        }
+    }
+
+    /** Return the code of the next move, or 0 if there are no more. */
+    int next() {
+        while (true) {
+            switch (_stage) {
+            case PREFERRED:
+                if (_next < _preferredCount) {
+                    int move = _preferred[_next++];
+                    if (!emitted(move) && _board.isLegal(move)) {
+                        return emit(move);
+                    }
+                    continue;
+                }
+                _count = _board.captureMoves(_board.turn(), _moves);
+                startStage(CAPTURES);
+                continue;
+            case CAPTURES:
+                if (_next < _count) {
+                    int move = _moves[_next++];
+                    if (!emitted(move)) {
+                        return emit(move);
+                    }
+                    continue;
+                }
+                _count = kingAdvances();
+                startStage(KING);
+                continue;
+            case KING:
+                if (_next < _count) {
+                    int move = _moves[_next++];
+                    if (!emitted(move)) {
+                        return emit(move);
+                    }
+                    continue;
+                }
+                startStage(KILLERS);
+                continue;
+            case KILLERS:
+                if (_next < _killers.length) {
+                    int move = _killers[_next++];
+                    if (move != 0 && !emitted(move) && _board.isLegal(move)) {
+                        return emit(move);
+                    }
+                    continue;
+                }
+                _count = quiets();
+                startStage(QUIETS);
+                continue;
+            case QUIETS:
+                if (_next < _count) {
+                    return pickQuiet();
+                }
+                startStage(DONE);
+                continue;
+            default:
+                return 0;
+            }
+        }
+    }
+
+    /** Return true iff the move last supplied is a quiet one: not a
+     *  preferred move, a capture, or one of the king's moves toward the
+     *  edge. */
+    boolean lastWasQuiet() {
+        return _stage == KILLERS || _stage == QUIETS;
+    }
+
+    /** Enter STAGE at its first move. */
+    private void startStage(int stage) {
+        _stage = stage;
+        _next = 0;
+    }
+
+    /** Note that MOVE has been supplied, and return it. */
+    private int emit(int move) {
+        _emitted[_emittedCount++] = move;
+        return move;
+    }
+
+    /** Return true iff MOVE has already been supplied. */
+    private boolean emitted(int move) {
+        for (int k = 0; k < _emittedCount; k += 1) {
+            if (_emitted[k] == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Store the king's moves that bring it nearer the edge in _moves, if
+     *  the king is on the side to move, and return their number. */
+    private int kingAdvances() {
+        int king = _board.kingIndex();
+        if (_board.turn() != Piece.WHITE || king < 0) {
+            return 0;
+        }
+        int n = _board.pieceMoves(king, _moves);
+        int distance = edgeDistance(king), k;
+        k = 0;
+        for (int j = 0; j < n; j += 1) {
+            if (edgeDistance(Move.toIndex(_moves[j])) < distance) {
+                _moves[k++] = _moves[j];
+            }
+        }
+        return k;
+    }
+
+    /** Return the number of rows or columns between the square with index
+     *  INDEX and the nearest edge. */
+    private int edgeDistance(int index) {
+        int size = _board.size(), row = index / size, col = index % size;
+        return Math.min(Math.min(row, size - 1 - row),
+                        Math.min(col, size - 1 - col));
+    }
+
+    /** Store the legal moves not yet supplied in _moves, with their
+     *  history scores in _scores, and return their number. */
+    private int quiets() {
+        int n = _board.legalMoves(_board.turn(), _moves), k;
+        k = 0;
+        for (int j = 0; j < n; j += 1) {
+            int move = _moves[j];
+            if (!emitted(move)) {
+                _moves[k] = move;
+                _scores[k] = _history[Move.fromIndex(move)][Move.toIndex(move)];
+                k += 1;
+            }
+        }
+        return k;
+    }
+
+    /** Return the highest-scoring quiet move not yet supplied, the
+     *  earliest generated among equals. */
+    private int pickQuiet() {
+        int top = _next;
+        for (int j = _next + 1; j < _count; j += 1) {
+            if (_scores[j] > _scores[top]) {
+                top = j;
+            }
+        }
+        int move = _moves[top];
+        _moves[top] = _moves[_next];
+        _scores[top] = _scores[_next];
+        _next += 1;
+        return move;
+    }
+
+    /** The position whose moves I supply. */
+    private Board _board;
+    /** The killer moves and history scores used for ordering. */
+    private int[] _killers;
+    /** See _killers. */
+    private int[][] _history;
+    /** The current stage. */
+    private int _stage;
+    /** The preferred moves, _preferredCount of them. */
+    private final int[] _preferred = new int[MAX_PREFERRED];
+    /** See _preferred. */
+    private int _preferredCount;
+    /** The moves of the current stage, _count of them, from which the
+     *  next to be supplied is at _next, and, in the quiet stage, their
+     *  history scores. */
+    private final int[] _moves = new int[Board.MAX_MOVES],
+        _scores = new int[Board.MAX_MOVES];
+    /** See _moves. */
+    private int _count, _next;
+    /** The moves supplied before the quiet stage, _emittedCount of
+     *  them, which that stage leaves out. */
+    private final int[] _emitted = new int[Board.MAX_MOVES];
+    /** See _emitted. */
+    private int _emittedCount;
+
+}
@@ -0,0 +1,78 @@
+package tablut;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of MovePicker.
+ *  @author Jianing Yu
+ */
+public class MovePickerTest {
+
+    /** Return the set of CODES[0 .. N-1]. */
+    static Set<Integer> codes(int[] codes, int n) {
+        Set<Integer> result = new HashSet<>();
+        for (int k = 0; k < n; k += 1) {
+            result.add(codes[k]);
+        }
+        return result;
+    }
+
+    @Test
+    public void eachLegalMoveOnce() {
+        Random random = new Random(23);
+        MovePicker picker = new MovePicker();
+        int[] codes = new int[Board.MAX_MOVES];
+        for (Board b : AITest.positions(30, 19)) {
+            int squares = b.size() * b.size();
+            int[][] history = new int[squares][squares];
+            for (int[] row : history) {
+                for (int k = 0; k < squares; k += 1) {
+                    row[k] = random.nextInt(100);
+                }
+            }
+            int n = b.legalMoves(b.turn(), codes);
+            Set<Integer> legal = codes(codes, n);
+            int preferred = codes[random.nextInt(n)],
+                killer = codes[random.nextInt(n)];
+            Set<Integer> captures =
+                codes(codes, b.captureMoves(b.turn(), codes));
+            int other = b.legalMoves(b.turn().opponent(), codes);
+            int illegal = other == 0 ? 0 : codes[random.nextInt(other)];
+
+            picker.reset(b, new int[] { killer, illegal }, history);
+            picker.prefer(preferred);
+            picker.prefer(illegal);
+            picker.prefer(preferred);
+            Set<Integer> supplied = new HashSet<>();
+            boolean quiet = false;
+            int lastScore = Integer.MAX_VALUE;
+            for (int move = picker.next(); move != 0; move = picker.next()) {
+                assertTrue("illegal move supplied", legal.contains(move));
+                assertTrue("move supplied twice", supplied.add(move));
+                if (supplied.size() == 1) {
+                    assertEquals(preferred, move);
+                }
+                if (picker.lastWasQuiet()) {
+                    assertFalse("capture supplied as quiet",
+                                captures.contains(move));
+                    quiet = true;
+                    if (move != killer) {
+                        int score = history[Move.fromIndex(move)]
+                            [Move.toIndex(move)];
+                        assertTrue("quiet moves out of order",
+                                   score <= lastScore);
+                        lastScore = score;
+                    }
+                } else {
+                    assertFalse("early stage after a quiet move", quiet);
+                }
+            }
+            assertEquals(legal, supplied);
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Piece.*;
+import static tablut.Utils.*;
+
+/** A compact, immutable encoding of the contents of a Board and the side
+ *  to move: two bits per square (the Piece ordinal) followed by one bit
+ *  that is set when black has the move, packed into longs.  Square i
+ *  occupies bits 2*(i%32) and 2*(i%32)+1 of word i/32.  Two keys are
+ *  equal iff they encode the same position on boards of the same size,
+ *  so keys may be used in hash maps, and toBytes gives a fixed-width
+ *  form for files (BYTES bytes for the standard board).
+ *  @author Jianing Yu
+ */
+final class PositionKey {
+
+    /** Return the number of bytes in the external form of a key for a
+     *  board with SIZE squares on a side. */
+    static int bytes(int size) {
+        return (2 * size * size + 1 + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    /** Number of bytes in the external form of a key for the standard
+     *  board. */
+    static final int BYTES = bytes(Board.SIZE);
+
+    /** All Pieces, indexed by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
+
+    /** Number of squares encoded in each word. */
+    private static final int SQUARES_PER_WORD = 32;
+
+    /** A key for a board with SIZE squares on a side whose encoding is
+     *  WORDS, which becomes mine. */
+    private PositionKey(int size, long[] words) {
+        int turnBit = 2 * size * size;
+        int last = turnBit / Long.SIZE;
+        if (words.length != last + 1
+            || (words[last] >>> (turnBit % Long.SIZE)) > 1) {
+            throw error("invalid position key");
+        }
+        _size = size;
+        _words = words;
+    }
+
+    /** Return a new, empty encoding for a board with SIZE squares on a
+     *  side. */
+    private static long[] newWords(int size) {
+        return new long[2 * size * size / Long.SIZE + 1];
+    }
+
+    /** Return the key for a board with SIZE squares on a side with the
+     *  given CELLS (piece ordinals, indexed by square) and with black to
+     *  move iff BLACKTOMOVE. */
+    static PositionKey encode(int size, byte[] cells, boolean blackToMove) {
+        long[] words = newWords(size);
+        int n = size * size;
+        for (int i = 0; i < n; i += 1) {
+            words[i / SQUARES_PER_WORD] |=
+                (long) cells[i] << (2 * (i % SQUARES_PER_WORD));
+        }
+        if (blackToMove) {
+            words[n / SQUARES_PER_WORD] |=
+                1L << (2 * (n % SQUARES_PER_WORD));
+        }
+        return new PositionKey(size, words);
+    }
+
+    /** Return the number of squares on a side of my board. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the contents of the square with index INDEX. */
+    Piece get(int index) {
+        int shift = 2 * (index % SQUARES_PER_WORD);
+        return PIECES[(int) (_words[index / SQUARES_PER_WORD] >>> shift) & 3];
+    }
+
+    /** Return the side to move. */
+    Piece turn() {
+        int n = _size * _size;
+        long word = _words[n / SQUARES_PER_WORD];
+        return (word >>> (2 * (n % SQUARES_PER_WORD)) & 1) != 0
+            ? BLACK : WHITE;
+    }
+
+    /** Return my external form, bytes(size()) bytes long. */
+    byte[] toBytes() {
+        byte[] result = new byte[bytes(_size)];
+        toBytes(result, 0);
+        return result;
+    }
+
+    /** Store my external form in BUF[OFFSET .. OFFSET+bytes(size())-1],
+     *  least-significant byte of word 0 first. */
+    void toBytes(byte[] buf, int offset) {
+        int n = bytes(_size);
+        for (int k = 0; k < n; k += 1) {
+            buf[offset + k] = (byte) (_words[k / 8] >>> (8 * (k % 8)));
+        }
+    }
+
+    /** Return the key for a board with SIZE squares on a side whose
+     *  external form is in BUF[OFFSET .. OFFSET+bytes(SIZE)-1], as
+     *  written by toBytes. */
+    static PositionKey fromBytes(int size, byte[] buf, int offset) {
+        long[] words = newWords(size);
+        int n = bytes(size);
+        for (int k = 0; k < n; k += 1) {
+            words[k / 8] |= (buf[offset + k] & 0xffL) << (8 * (k % 8));
+        }
+        return new PositionKey(size, words);
+    }
+
+    /** Return the key whose external form is BYTES.  The board size is
+     *  the one whose keys have that length. */
+    static PositionKey fromBytes(byte[] bytes) {
+        for (int size = Board.SIZE; size <= Geometry.MAX_SIZE; size += 2) {
+            if (bytes(size) == bytes.length) {
+                return fromBytes(size, bytes, 0);
+            }
+        }
+        throw error("no position key has %d bytes", bytes.length);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof PositionKey)) {
+            return false;
+        }
+        PositionKey other = (PositionKey) obj;
+        return _size == other._size && Arrays.equals(_words, other._words);
+    }
+
+    @Override
+    public int hashCode() {
+        long h = _size;
+        for (long w : _words) {
+            h = (h ^ w) * 0x9E3779B97F4A7C15L;
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Returns the same text as Board.encodedBoard for this position. */
+    @Override
+    public String toString() {
+        char[] result = new char[_size * _size + 1];
+        result[0] = turn().toString().charAt(0);
+        for (int i = 0; i < _size * _size; i += 1) {
+            result[i + 1] = get(i).toString().charAt(0);
+        }
+        return new String(result);
+    }
+
+    /** The number of squares on a side of my board. */
+    private final int _size;
+
+    /** My encoding. */
+    private final long[] _words;
+
+}
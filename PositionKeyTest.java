@@ -0,0 +1,145 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+
+/** Tests of PositionKey and BoardSnapshot.
+ *  @author Jianing Yu
+ */
+public class PositionKeyTest {
+
+    /** Return the boards reached in GAMES random games on boards of each
+     *  size, chosen with seed SEED, after every move. */
+    static List<Board> playedBoards(int games, long seed) {
+        Random random = new Random(seed);
+        int[] codes = new int[Board.MAX_MOVES];
+        List<Board> result = new ArrayList<>();
+        for (int size = 9; size <= Geometry.MAX_SIZE; size += 2) {
+            for (int game = 0; game < games; game += 1) {
+                Board b = new Board(Geometry.forSize(size));
+                b.setMoveLimit(40 + random.nextInt(40));
+                result.add(new Board(b));
+                while (b.winner() == null) {
+                    int n = b.legalMoves(b.turn(), codes);
+                    b.makeMove(codes[random.nextInt(n)]);
+                    result.add(new Board(b));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void keysDescribeTheirBoards() {
+        for (Board b : playedBoards(3, 31)) {
+            PositionKey key = b.encode();
+            assertEquals(b.size(), key.size());
+            assertEquals(b.turn(), key.turn());
+            for (int i = 0; i < b.size() * b.size(); i += 1) {
+                assertEquals(b.get(i), key.get(i));
+            }
+            Board c = new Board(b.geometry());
+            c.decode(key);
+            assertEquals(key, c.encode());
+            assertEquals(b.key(), c.key());
+            assertEquals(b.evaluate(), c.evaluate());
+        }
+    }
+
+    @Test
+    public void bytesRoundTrip() {
+        for (Board b : playedBoards(3, 37)) {
+            PositionKey key = b.encode();
+            byte[] bytes = key.toBytes();
+            assertEquals(PositionKey.bytes(b.size()), bytes.length);
+            PositionKey copy = PositionKey.fromBytes(bytes);
+            assertEquals(key, copy);
+            assertEquals(key.hashCode(), copy.hashCode());
+            assertEquals(key.toString(), copy.toString());
+            byte[] buf = new byte[bytes.length + 5];
+            key.toBytes(buf, 3);
+            assertEquals(key, PositionKey.fromBytes(b.size(), buf, 3));
+        }
+        assertEquals(PositionKey.BYTES,
+                     new Board().encode().toBytes().length);
+    }
+
+    @Test
+    public void differentPositionsHaveDifferentKeys() {
+        List<Board> boards = playedBoards(1, 41);
+        for (int k = 1; k < boards.size(); k += 1) {
+            PositionKey before = boards.get(k - 1).encode(),
+                after = boards.get(k).encode();
+            if (before.size() == after.size()) {
+                assertNotEquals(before, after);
+            }
+        }
+        Board b = new Board();
+        byte[] cells = new byte[b.size() * b.size()];
+        for (int i = 0; i < cells.length; i += 1) {
+            cells[i] = (byte) b.get(i).ordinal();
+        }
+        assertEquals(b.encode(), PositionKey.encode(b.size(), cells, true));
+        assertNotEquals(b.encode(),
+                        PositionKey.encode(b.size(), cells, false));
+        assertNotEquals(b.encode(),
+                        new Board(Geometry.HNEFATAFL).encode());
+    }
+
+    @Test
+    public void badBytesAreRejected() {
+        byte[] bytes = new Board().encode().toBytes();
+        bytes[bytes.length - 1] |= 0x8;
+        byte[][] bad = { new byte[5], bytes };
+        for (byte[] form : bad) {
+            try {
+                PositionKey.fromBytes(form);
+                fail("accepted " + form.length + " bytes");
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    /** Check that C, restored from a snapshot of B, has B's state but no
+     *  history. */
+    static void checkRestored(Board b, Board c) {
+        assertEquals(b.encode(), c.encode());
+        assertEquals(b.key(), c.key());
+        assertEquals(b.winner(), c.winner());
+        assertEquals(b.repeatedPosition(), c.repeatedPosition());
+        assertEquals(b.moveCount(), c.moveCount());
+        assertEquals(b.snapshot().moveLimit(), c.snapshot().moveLimit());
+        Board undone = new Board(c);
+        undone.undo();
+        assertEquals(c.encode(), undone.encode());
+    }
+
+    @Test
+    public void snapshotsRoundTrip() {
+        int[] codes = new int[Board.MAX_MOVES];
+        for (Board b : playedBoards(2, 43)) {
+            BoardSnapshot snapshot = b.snapshot();
+            assertEquals(b.turn(), snapshot.turn());
+            assertEquals(b.key(), snapshot.key());
+            checkRestored(b, snapshot.toBoard());
+            Board c = new Board(b.geometry());
+            c.legalMoves(c.turn(), codes);
+            c.makeMove(codes[0]);
+            c.restore(snapshot);
+            checkRestored(b, c);
+        }
+        Board b = new Board();
+        BoardSnapshot snapshot = b.snapshot();
+        b.makeMove(Move.mv("a4-3"));
+        assertEquals(BLACK, snapshot.turn());
+        assertEquals(new Board().encode(), snapshot.position());
+    }
+
+}
@@ -0,0 +1,184 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Utils.*;
+
+/** A fixed-size table of search results, indexed by the Zobrist key of
+ *  a position (see Board.key).  The table is an array of buckets, a
+ *  power of two of them, each holding two entries: the first is kept
+ *  for the deepest result, the second takes whatever the first refuses.
+ *  An entry is two longs: the key XORed with the data, and the data, which
+ *  packs the score, best move code, depth, bound type, and the age (the
+ *  search that stored it).  An entry is believed only if XORing its two
+ *  words gives back the key probed for, so an entry torn by a concurrent
+ *  writer reads as a miss rather than as wrong data.
+ *  @author Jianing Yu
+ */
+final class TranspositionTable {
+
+    /** Bound type of a score that is a lower bound (the search failed
+     *  high). */
+    static final int LOWER = 1;
+    /** Bound type of a score that is an upper bound (the search failed
+     *  low). */
+    static final int UPPER = 2;
+    /** Bound type of an exact score. */
+    static final int EXACT = LOWER | UPPER;
+
+    /** The largest table size allowed, in megabytes. */
+    static final int MAX_MEGABYTES = 1024;
+
+    /** A table taking MEGABYTES megabytes (rounded down to a power of
+     *  two). */
+    TranspositionTable(int megabytes) {
+        resize(megabytes);
+    }
+
+    /** Discard all entries and make the table take MEGABYTES megabytes
+     *  (rounded down to a power of two), 1 <= MEGABYTES <= MAX_MEGABYTES. */
+    void resize(int megabytes) {
+        if (megabytes < 1 || megabytes > MAX_MEGABYTES) {
+            throw error("hash size must be between 1 and %d MB",
+                        MAX_MEGABYTES);
+        }
+        long buckets = Long.highestOneBit(((long) megabytes << 20)
+                                          / BUCKET_BYTES);
+        _table = new long[(int) buckets * BUCKET_LONGS];
+        _mask = (int) buckets - 1;
+        _megabytes = (int) (buckets * BUCKET_BYTES >> 20);
+    }
+
+    /** Return my size in megabytes. */
+    int megabytes() {
+        return _megabytes;
+    }
+
+    /** Discard all entries. */
+    void clear() {
+        Arrays.fill(_table, 0L);
+        _age = 0;
+    }
+
+    /** Start a new search: entries stored before now may be replaced by
+     *  shallower ones.  Only the last 16 searches are told apart. */
+    void newSearch() {
+        _age = (_age + 1) & AGE_FIELD;
+    }
+
+    /** Return the data stored for the position with key KEY, or 0 if there
+     *  is none.  Use score, move, depth, and bound to unpack it. */
+    long probe(long key) {
+        int k = bucket(key);
+        long data = read(k, key);
+        return data != 0 ? data : read(k + ENTRY_LONGS, key);
+    }
+
+    /** Record that the position with key KEY, searched to DEPTH, has the
+     *  score SCORE with bound type BOUND (LOWER, UPPER, or EXACT), and that
+     *  its best move is the one with code MOVE (0 if unknown).  If the
+     *  position is already present and MOVE is 0, its old move is kept. */
+    void store(long key, int move, int score, int bound, int depth) {
+        int k = bucket(key);
+        int e;
+        long old;
+        if ((old = read(k, key)) != 0) {
+            e = k;
+        } else if ((old = read(k + ENTRY_LONGS, key)) != 0) {
+            e = k + ENTRY_LONGS;
+        } else {
+            long first = _table[k + 1];
+            if (depth >= depth(first) || age(first) != _age) {
+                _table[k + ENTRY_LONGS] = _table[k];
+                _table[k + ENTRY_LONGS + 1] = first;
+                e = k;
+            } else {
+                e = k + ENTRY_LONGS;
+            }
+        }
+        if (move == 0 && old != 0) {
+            move = move(old);
+        }
+        long data = (score & 0xffffffffL)
+            | (long) move << MOVE_SHIFT
+            | (long) Math.min(depth, DEPTH_FIELD) << DEPTH_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (long) _age << AGE_SHIFT;
+        _table[e] = key ^ data;
+        _table[e + 1] = data;
+    }
+
+    /** Return the data of the entry at _table[E] if it is for the
+     *  position with key KEY, and otherwise 0.  The data word is read
+     *  only once, so that what is checked against KEY is what is
+     *  returned, whatever other threads store meanwhile. */
+    private long read(int e, long key) {
+        long data = _table[e + 1];
+        return data != 0 && (_table[e] ^ data) == key ? data : 0;
+    }
+
+    /** Return the score in the entry data DATA. */
+    static int score(long data) {
+        return (int) data;
+    }
+
+    /** Return the move code in the entry data DATA, or 0. */
+    static int move(long data) {
+        return (int) (data >>> MOVE_SHIFT) & MOVE_FIELD;
+    }
+
+    /** Return the depth in the entry data DATA. */
+    static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & DEPTH_FIELD;
+    }
+
+    /** Return the bound type in the entry data DATA. */
+    static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & EXACT;
+    }
+
+    /** Return the age in the entry data DATA. */
+    private static int age(long data) {
+        return (int) (data >>> AGE_SHIFT) & AGE_FIELD;
+    }
+
+    /** Return the index in _table of the bucket for KEY, whose first
+     *  entry starts there. */
+    int bucket(long key) {
+        return ((int) (key ^ (key >>> 32)) & _mask) * BUCKET_LONGS;
+    }
+
+    /** Return the long at INDEX in my entries.  For testing. */
+    long word(int index) {
+        return _table[index];
+    }
+
+    /** Set the long at INDEX in my entries to VALUE, as a racing writer
+     *  might.  For testing. */
+    void setWord(int index, long value) {
+        _table[index] = value;
+    }
+
+    /** Layout of entry data: the score is in the low 32 bits. */
+    private static final int
+        MOVE_SHIFT = 32, MOVE_FIELD = (1 << 18) - 1,
+        DEPTH_SHIFT = 50, DEPTH_FIELD = (1 << 8) - 1,
+        BOUND_SHIFT = 58,
+        AGE_SHIFT = 60, AGE_FIELD = (1 << 4) - 1;
+
+    /** Number of longs in an entry and a bucket. */
+    private static final int ENTRY_LONGS = 2, BUCKET_LONGS = 2 * ENTRY_LONGS;
+
+    /** Number of bytes in a bucket. */
+    private static final int BUCKET_BYTES = BUCKET_LONGS * Long.BYTES;
+
+    /** The entries, in buckets of BUCKET_LONGS. */
+    private long[] _table;
+    /** The number of buckets less 1. */
+    private int _mask;
+    /** My size in megabytes. */
+    private int _megabytes;
+    /** The age of the current search. */
+    private int _age;
+
+}
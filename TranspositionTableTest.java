@@ -0,0 +1,167 @@
+package tablut;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.TranspositionTable.*;
+
+/** Tests of the TranspositionTable.
+ *  @author Jianing Yu
+ */
+public class TranspositionTableTest {
+
+    /** The number of buckets in a one-megabyte table: keys below 2**32
+     *  that differ by a multiple of this share a bucket. */
+    private static final long BUCKETS = 1 << 15;
+
+    /** A key used throughout. */
+    private static final long KEY = 0x12345L;
+
+    /** The code of a move used throughout. */
+    private static final int MOVE = Move.mv("a4-3").code();
+
+    /** Check that TABLE holds, for KEY, the move with code MOVE, SCORE,
+     *  BOUND, and DEPTH. */
+    static void checkEntry(TranspositionTable table, long key, int move,
+                           int score, int bound, int depth) {
+        long data = table.probe(key);
+        assertNotEquals("no entry for " + key, 0L, data);
+        assertEquals(move, move(data));
+        assertEquals(score, score(data));
+        assertEquals(bound, bound(data));
+        assertEquals(depth, depth(data));
+    }
+
+    @Test
+    public void storedEntriesAreFound() {
+        TranspositionTable table = new TranspositionTable(1);
+        int[] scores = { 0, 17, -4321, Integer.MAX_VALUE - 20,
+                         -(Integer.MAX_VALUE - 20) };
+        int[] bounds = { LOWER, UPPER, EXACT };
+        for (int k = 0; k < scores.length; k += 1) {
+            long key = KEY + k;
+            table.store(key, MOVE, scores[k], bounds[k % 3], k);
+            checkEntry(table, key, MOVE, scores[k], bounds[k % 3], k);
+        }
+        table.store(KEY, 0, 5, EXACT, 1000);
+        assertEquals(255, depth(table.probe(KEY)));
+    }
+
+    @Test
+    public void otherKeysMiss() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(KEY, MOVE, 1, EXACT, 3);
+        assertEquals(0L, table.probe(KEY + 1));
+        assertEquals(0L, table.probe(KEY + BUCKETS));
+        assertEquals(0L, table.probe(KEY + (1L << 40)));
+        table.clear();
+        assertEquals(0L, table.probe(KEY));
+    }
+
+    @Test
+    public void deeperEntriesAreKept() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key1 = KEY, key2 = KEY + BUCKETS, key3 = KEY + 2 * BUCKETS,
+            key4 = KEY + 3 * BUCKETS, key5 = KEY + 4 * BUCKETS;
+        table.store(key1, MOVE, 1, EXACT, 5);
+        table.store(key2, MOVE, 2, EXACT, 3);
+        checkEntry(table, key1, MOVE, 1, EXACT, 5);
+        checkEntry(table, key2, MOVE, 2, EXACT, 3);
+        table.store(key3, MOVE, 3, LOWER, 2);
+        checkEntry(table, key1, MOVE, 1, EXACT, 5);
+        checkEntry(table, key3, MOVE, 3, LOWER, 2);
+        assertEquals(0L, table.probe(key2));
+        table.store(key4, MOVE, 4, UPPER, 7);
+        checkEntry(table, key4, MOVE, 4, UPPER, 7);
+        checkEntry(table, key1, MOVE, 1, EXACT, 5);
+        assertEquals(0L, table.probe(key3));
+        table.store(key1, MOVE, -1, EXACT, 1);
+        checkEntry(table, key1, MOVE, -1, EXACT, 1);
+        checkEntry(table, key4, MOVE, 4, UPPER, 7);
+        table.newSearch();
+        table.store(key5, MOVE, 5, EXACT, 1);
+        checkEntry(table, key5, MOVE, 5, EXACT, 1);
+        checkEntry(table, key4, MOVE, 4, UPPER, 7);
+        assertEquals(0L, table.probe(key1));
+    }
+
+    @Test
+    public void unknownMoveKeepsOldMove() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(KEY, MOVE, 1, LOWER, 2);
+        table.store(KEY, 0, 6, EXACT, 4);
+        checkEntry(table, KEY, MOVE, 6, EXACT, 4);
+        table.store(KEY + BUCKETS, 0, 7, EXACT, 5);
+        checkEntry(table, KEY + BUCKETS, 0, 7, EXACT, 5);
+    }
+
+    @Test
+    public void tornEntriesMiss() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key1 = KEY, key2 = KEY + BUCKETS;
+        int e = table.bucket(key1);
+        table.store(key1, MOVE, 1, EXACT, 2);
+        /* Pair the first word KEY1 left in its slot with the second
+         * word that KEY2 leaves there, as racing writers might. */
+        long keyWord = table.word(e);
+        table.store(key2, MOVE, 2, EXACT, 3);
+        checkEntry(table, key2, MOVE, 2, EXACT, 3);
+        table.setWord(e, keyWord);
+        assertEquals(0L, table.probe(key2));
+        checkEntry(table, key1, MOVE, 1, EXACT, 2);
+    }
+
+    @Test
+    public void racingWritersNeverGiveWrongData()
+        throws InterruptedException {
+        TranspositionTable table = new TranspositionTable(1);
+        long[] keys = { KEY, KEY + BUCKETS, KEY + 2 * BUCKETS };
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread[] writers = new Thread[keys.length];
+        for (int w = 0; w < keys.length; w += 1) {
+            long key = keys[w];
+            int score = w + 1;
+            writers[w] = new Thread(() -> {
+                for (int depth = 0; !stop.get(); depth = (depth + 1) & 7) {
+                    table.store(key, MOVE, score, EXACT, depth);
+                }
+            });
+            writers[w].start();
+        }
+        try {
+            for (int n = 0; n < 1_000_000; n += 1) {
+                int w = n % keys.length;
+                long data = table.probe(keys[w]);
+                if (data != 0) {
+                    assertEquals(w + 1, score(data));
+                }
+            }
+        } finally {
+            stop.set(true);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+    }
+
+    @Test
+    public void sizesAreChecked() {
+        assertEquals(2, new TranspositionTable(3).megabytes());
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(KEY, MOVE, 1, EXACT, 2);
+        table.resize(2);
+        assertEquals(2, table.megabytes());
+        assertEquals(0L, table.probe(KEY));
+        for (int megabytes : new int[] { 0, -1, MAX_MEGABYTES + 1 }) {
+            try {
+                table.resize(megabytes);
+                fail("resized to " + megabytes);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+}
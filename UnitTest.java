@@ -1,10 +1,8 @@
 package tablut;
 
-import org.junit.Test;
-import static org.junit.Assert.*;
 import ucb.junit.textui;
 
-/** The suite of all JUnit tests for the enigma package.
+/** The suite of all JUnit tests for the tablut package.
  *  @author
  */
 public class UnitTest {
@@ -12,13 +10,9 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(UnitTest.class);
-    }
-
-    /** A dummy test as a placeholder for real ones. */
-    @Test
-    public void dummyTest() {
-        assertTrue("There are no unit tests!", true);
+        textui.runClasses(BoardTest.class, AITest.class,
+                          TranspositionTableTest.class,
+                          MovePickerTest.class, PositionKeyTest.class);
     }
 
 }